@@ -0,0 +1,94 @@
+package Editor;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+
+// Drawn rows of the screen without caret. The buffer is a ring of bands: row is kept in the slot
+// row mod bands, so rows which stay on the screen after scrolling are neither drawn nor moved.
+// The image is a BufferedImage or a VolatileImage, which can be kept in video memory. Contents of
+// a VolatileImage can be lost, then all slots are copied again from images of rows, text isn't drawn
+class BackBuffer {
+
+    private final boolean isVolatile;
+    private Image image;
+    private GraphicsConfiguration configuration;
+    private int width;
+    private int lineHeight;
+    private int[] rows; // rows in slots
+    private int[] versions; // versions of images of the rows
+
+    BackBuffer(boolean isVolatile) {
+        this.isVolatile = isVolatile;
+    }
+
+    // buffer for bands rows of width x lineHeight
+    public void setUp(Graphics2D graphics2D, int width, int bands, int lineHeight) {
+        GraphicsConfiguration configuration = graphics2D.getDeviceConfiguration();
+        if (image == null || width != this.width || bands != rows.length || lineHeight != this.lineHeight ||
+                configuration != this.configuration) {
+            this.configuration = configuration;
+            this.width = width;
+            this.lineHeight = lineHeight;
+            rows = new int[bands];
+            versions = new int[bands];
+            createImage();
+        } else if (image instanceof VolatileImage) {
+            switch (((VolatileImage) image).validate(configuration)) {
+                case VolatileImage.IMAGE_INCOMPATIBLE:
+                    createImage();
+                    break;
+                case VolatileImage.IMAGE_RESTORED:
+                    Arrays.fill(rows, Integer.MIN_VALUE);
+                    break;
+            }
+        }
+    }
+
+    private void createImage() {
+        int height = rows.length * lineHeight;
+        if (configuration == null) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        } else if (isVolatile) {
+            image = configuration.createCompatibleVolatileImage(width, height);
+        } else {
+            image = configuration.createCompatibleImage(width, height);
+        }
+        Arrays.fill(rows, Integer.MIN_VALUE);
+    }
+
+    // graphics of the buffer, row is drawn at getY(row)
+    public Graphics2D createGraphics() {
+        return (Graphics2D) image.getGraphics();
+    }
+
+    public int getY(int row) {
+        return Math.floorMod(row, rows.length) * lineHeight;
+    }
+
+    // true if the slot of row holds the image of row with version
+    public boolean contains(int row, int version) {
+        int slot = Math.floorMod(row, rows.length);
+        return rows[slot] == row && versions[slot] == version;
+    }
+
+    public void set(int row, int version) {
+        int slot = Math.floorMod(row, rows.length);
+        rows[slot] = row;
+        versions[slot] = version;
+    }
+
+    // draws slots from the one of startRow to the end of the buffer, then the ones from its start
+    public void show(Graphics2D graphics2D, int startRow, int startY) {
+        int height = rows.length * lineHeight;
+        int split = height - getY(startRow);
+        graphics2D.drawImage(image, 0, startY, width, startY + split, 0, height - split, width, height, null);
+        graphics2D.drawImage(image, 0, startY + split, width, startY + height, 0, 0, width, height - split, null);
+    }
+
+    // contents of a VolatileImage were lost while it was drawn, it should be drawn again
+    public boolean isLost() {
+        return image instanceof VolatileImage && ((VolatileImage) image).contentsLost();
+    }
+}
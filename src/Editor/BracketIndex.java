@@ -0,0 +1,440 @@
+package Editor;
+
+import Editor.Word.Type;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Brackets of every row for each kind: (), [], {}. Open bracket is +1, close bracket is -1 and
+// for every row and kind it keeps sum, min of prefix sums and max of suffix sums.
+// Rows are split into blocks, segment tree over blocks finds the row with the matching bracket
+// in O(log n + MAX_BLOCK) without walking through words between brackets
+class BracketIndex {
+
+    static final int ROW_INTS = 9; // 3 kinds * (sum, min prefix, max suffix)
+
+    private static final int KINDS = 3;
+    private static final int SUM = 0;
+    private static final int MIN_PREFIX = 1;
+    private static final int MAX_SUFFIX = 2;
+    private static final int ROWS = ROW_INTS; // count of rows in a node of tree
+    private static final int NODE_INTS = ROW_INTS + 1;
+    private static final int MAX_BLOCK = 128;
+    private static final int MIN_BLOCK = MAX_BLOCK / 8;
+    private static final byte[] bracketKind = new byte[128];
+    private static final boolean[] isOpenBracket = new boolean[128];
+
+    static {
+        Arrays.fill(bracketKind, (byte) -1);
+        String brackets = "()[]{}";
+        for (int i = 0; i < brackets.length(); i++) {
+            bracketKind[brackets.charAt(i)] = (byte) (i / 2);
+            isOpenBracket[brackets.charAt(i)] = i % 2 == 0;
+        }
+    }
+
+    private final ArrayList<TIntArrayList> blocks; // ROW_INTS ints for every row
+    private int[] tree; // NODE_INTS ints for every node, leaves are blocks
+    private int leaves;
+    private int size;
+
+    // state of search
+    private int sum;
+    private int need;
+
+    // last found block
+    private int lastBlock;
+    private int lastBlockRow;
+
+    BracketIndex() {
+        blocks = new ArrayList<>();
+        size = 0;
+        rebuild();
+    }
+
+    // 0, 1, 2 for brackets, -1 for other chars
+    static int kind(char ch) {
+        return ch < bracketKind.length ? bracketKind[ch] : -1;
+    }
+
+    static boolean isOpen(char ch) {
+        return ch < bracketKind.length && isOpenBracket[ch];
+    }
+
+    // adds summary of a row to res: brackets are words [from, to) with type Bracket,
+    // char of a word is text[lineStart + start of the word]
+    static void addRow(CharSequence text, int lineStart, WordsArrayList words, int from, int to,
+                       TIntArrayList res) {
+        int row = res.size();
+        for (int i = 0; i < ROW_INTS; i++) {
+            res.add(0);
+        }
+
+        for (int i = from; i < to; i++) {
+            Type type = words.getType(i);
+            if (type == Type.Bracket || type == Type.BracketLight) {
+                char ch = text.charAt(lineStart + words.getStart(i));
+                int kind = kind(ch);
+                if (kind >= 0) {
+                    int pos = row + kind * 3;
+                    int value = isOpen(ch) ? 1 : -1;
+                    res.set(pos + MAX_SUFFIX, Math.max(res.get(pos + MAX_SUFFIX) + value, 0));
+                    res.set(pos + MIN_PREFIX, Math.min(res.get(pos + MIN_PREFIX), res.get(pos + SUM) + value));
+                    res.set(pos + SUM, res.get(pos + SUM) + value);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // insert rows without brackets
+    public void insert(int row, int count) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        }
+        if (count == 0) {
+            return;
+        }
+
+        int block;
+        int inBlock;
+        boolean rebuild = false;
+        if (blocks.isEmpty()) {
+            blocks.add(new TIntArrayList());
+            block = 0;
+            inBlock = 0;
+            rebuild = true;
+        } else if (row == size) {
+            block = blocks.size() - 1;
+            inBlock = blocks.get(block).size() / ROW_INTS;
+        } else {
+            block = findBlockByRow(row);
+            inBlock = row - lastBlockRow;
+        }
+
+        TIntArrayList rows = blocks.get(block);
+        rows.insert(inBlock * ROW_INTS, new int[count * ROW_INTS]);
+        size += count;
+
+        if (rows.size() > MAX_BLOCK * ROW_INTS) {
+            splitBlock(block);
+            rebuild = true;
+        }
+
+        if (rebuild) {
+            rebuild();
+        } else {
+            // rows without brackets don't change sums of the block
+            for (int node = leaves + block; node > 0; node >>= 1) {
+                tree[node * NODE_INTS + ROWS] += count;
+            }
+            lastBlock = -1;
+        }
+    }
+
+    public void remove(int row, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (row < 0 || count < 0 || row + count > size) {
+            throw new IndexOutOfBoundsException("Rows: [" + row + ", " + (row + count) + "), size: " + size);
+        }
+
+        int block = findBlockByRow(row);
+        int inBlock = row - lastBlockRow;
+        size -= count;
+
+        TIntArrayList rows = blocks.get(block);
+        if ((inBlock + count) * ROW_INTS < rows.size()) {
+            rows.remove(inBlock * ROW_INTS, count * ROW_INTS);
+            if (rows.size() < MIN_BLOCK * ROW_INTS && (mergeBlocks(block) || block > 0 && mergeBlocks(block - 1))) {
+                rebuild();
+            } else {
+                updateBlock(block);
+            }
+            return;
+        }
+
+        while (count > 0) {
+            rows = blocks.get(block);
+            int n = Math.min(count, rows.size() / ROW_INTS - inBlock);
+            rows.remove(inBlock * ROW_INTS, n * ROW_INTS);
+            count -= n;
+            if (rows.isEmpty()) {
+                blocks.remove(block);
+            } else {
+                block++;
+            }
+            inBlock = 0;
+        }
+
+        if (block > 0) {
+            mergeBlocks(block - 1);
+        }
+        rebuild();
+    }
+
+    // summaries of rows from startRow, ROW_INTS ints for every row, they are copied without allocations
+    public void set(int startRow, TIntArrayList values) {
+        set(startRow, values.size() / ROW_INTS, values);
+    }
+
+    // rows [startRow, startRow + count) have no brackets
+    public void clear(int startRow, int count) {
+        set(startRow, count, null);
+    }
+
+    // values are null for rows without brackets
+    private void set(int startRow, int count, TIntArrayList values) {
+        if (startRow < 0 || startRow + count > size) {
+            throw new IndexOutOfBoundsException("Rows: [" + startRow + ", " + (startRow + count) + "), size: " + size);
+        }
+
+        int done = 0;
+        while (done < count) {
+            int block = findBlockByRow(startRow + done);
+            int inBlock = startRow + done - lastBlockRow;
+            TIntArrayList rows = blocks.get(block);
+            int n = Math.min(count - done, rows.size() / ROW_INTS - inBlock);
+            if (values == null) {
+                rows.fill(inBlock * ROW_INTS, (inBlock + n) * ROW_INTS, 0);
+            } else {
+                for (int i = 0; i < n * ROW_INTS; i++) {
+                    rows.setQuick(inBlock * ROW_INTS + i, values.getQuick(done * ROW_INTS + i));
+                }
+            }
+            updateBlock(block);
+            done += n;
+        }
+    }
+
+    public void clear() {
+        blocks.clear();
+        size = 0;
+        rebuild();
+    }
+
+    // first row after row, where count of open brackets of kind minus count of close ones becomes -need.
+    // Returns -1 if there is no such row, else getNeed() is the count of not matched brackets at its start
+    public int findClose(int kind, int row, int need) {
+        sum = 0;
+        int block = findBlockByRow(row);
+        int res = findInBlock(block, row + 1 - lastBlockRow, true, kind, need);
+        if (res < 0) {
+            block = findFirst(1, 0, leaves, block + 1, kind, -need);
+            if (block < 0) {
+                return -1;
+            }
+            lastBlock = block;
+            lastBlockRow = blockStart(block);
+            res = findInBlock(block, 0, true, kind, need);
+        }
+
+        this.need = need + sum;
+        return res;
+    }
+
+    // last row before row, where count of open brackets of kind minus count of close ones from it
+    // to row becomes need. Returns -1 if there is no such row, else getNeed() is the count of
+    // not matched brackets at its end
+    public int findOpen(int kind, int row, int need) {
+        sum = 0;
+        int block = findBlockByRow(row);
+        int res = findInBlock(block, row - 1 - lastBlockRow, false, kind, need);
+        if (res < 0) {
+            block = findLast(1, 0, leaves, block, kind, need);
+            if (block < 0) {
+                return -1;
+            }
+            lastBlock = block;
+            lastBlockRow = blockStart(block);
+            res = findInBlock(block, blocks.get(block).size() / ROW_INTS - 1, false, kind, need);
+        }
+
+        this.need = need - sum;
+        return res;
+    }
+
+    public int getNeed() {
+        return need;
+    }
+
+    // rows of block from row inBlock forward or backward, sum is increased by skipped rows
+    private int findInBlock(int block, int inBlock, boolean forward, int kind, int need) {
+        TIntArrayList rows = blocks.get(block);
+        int start = lastBlockRow;
+        for (int i = inBlock; i >= 0 && i < rows.size() / ROW_INTS; i += forward ? 1 : -1) {
+            int pos = i * ROW_INTS + kind * 3;
+            if (forward ? sum + rows.get(pos + MIN_PREFIX) <= -need : sum + rows.get(pos + MAX_SUFFIX) >= need) {
+                return start + i;
+            }
+            sum += rows.get(pos + SUM);
+        }
+        return -1;
+    }
+
+    // first block >= from in node, where sum + min prefix <= target, sum is increased by skipped blocks
+    private int findFirst(int node, int nodeFrom, int nodeTo, int from, int kind, int target) {
+        if (nodeTo <= from || nodeFrom >= blocks.size()) {
+            return -1;
+        }
+
+        int pos = node * NODE_INTS + kind * 3;
+        if (from <= nodeFrom) {
+            if (sum + tree[pos + MIN_PREFIX] > target) {
+                sum += tree[pos + SUM];
+                return -1;
+            }
+            if (nodeTo - nodeFrom == 1) {
+                return nodeFrom;
+            }
+        }
+
+        int middle = (nodeFrom + nodeTo) >>> 1;
+        int res = findFirst(2 * node, nodeFrom, middle, from, kind, target);
+        return res >= 0 ? res : findFirst(2 * node + 1, middle, nodeTo, from, kind, target);
+    }
+
+    // last block < to in node, where sum + max suffix >= target, sum is increased by skipped blocks
+    private int findLast(int node, int nodeFrom, int nodeTo, int to, int kind, int target) {
+        if (nodeFrom >= to) {
+            return -1;
+        }
+
+        int pos = node * NODE_INTS + kind * 3;
+        if (nodeTo <= to) {
+            if (sum + tree[pos + MAX_SUFFIX] < target) {
+                sum += tree[pos + SUM];
+                return -1;
+            }
+            if (nodeTo - nodeFrom == 1) {
+                return nodeFrom;
+            }
+        }
+
+        int middle = (nodeFrom + nodeTo) >>> 1;
+        int res = findLast(2 * node + 1, middle, nodeTo, to, kind, target);
+        return res >= 0 ? res : findLast(2 * node, nodeFrom, middle, to, kind, target);
+    }
+
+    // first row of block
+    private int blockStart(int block) {
+        int res = 0;
+        for (int node = leaves + block; node > 1; node >>= 1) {
+            if ((node & 1) == 1) {
+                res += tree[(node - 1) * NODE_INTS + ROWS];
+            }
+        }
+        return res;
+    }
+
+    private int findBlockByRow(int row) {
+        if (lastBlock >= 0 && row >= lastBlockRow && row < lastBlockRow + blocks.get(lastBlock).size() / ROW_INTS) {
+            return lastBlock;
+        }
+
+        int node = 1;
+        int rows = 0;
+        while (node < leaves) {
+            node *= 2;
+            if (rows + tree[node * NODE_INTS + ROWS] <= row) {
+                rows += tree[node * NODE_INTS + ROWS];
+                node++;
+            }
+        }
+
+        lastBlock = Math.min(node - leaves, blocks.size() - 1);
+        lastBlockRow = rows;
+        return lastBlock;
+    }
+
+    private void splitBlock(int block) {
+        TIntArrayList rows = blocks.get(block);
+        int count = rows.size() / ROW_INTS;
+        int parts = (count + MAX_BLOCK / 2 - 1) / (MAX_BLOCK / 2);
+        ArrayList<TIntArrayList> newBlocks = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            int from = (int) ((long) count * i / parts);
+            int to = (int) ((long) count * (i + 1) / parts);
+            newBlocks.add(new TIntArrayList(rows.toArray(from * ROW_INTS, (to - from) * ROW_INTS)));
+        }
+
+        blocks.remove(block);
+        blocks.addAll(block, newBlocks);
+    }
+
+    // merge block with the next one if it is possible
+    private boolean mergeBlocks(int block) {
+        if (block + 1 >= blocks.size() ||
+                blocks.get(block).size() + blocks.get(block + 1).size() > MAX_BLOCK * ROW_INTS) {
+            return false;
+        }
+
+        blocks.get(block).addAll(blocks.get(block + 1));
+        blocks.remove(block + 1);
+        return true;
+    }
+
+    // Segment tree, block i is stored at node leaves + i
+
+    private void rebuild() {
+        leaves = 1;
+        while (leaves < blocks.size()) {
+            leaves *= 2;
+        }
+
+        tree = new int[2 * leaves * NODE_INTS];
+        for (int i = 0; i < blocks.size(); i++) {
+            setLeaf(i);
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            combine(node);
+        }
+        lastBlock = -1;
+    }
+
+    private void updateBlock(int block) {
+        setLeaf(block);
+        for (int node = (leaves + block) >> 1; node > 0; node >>= 1) {
+            combine(node);
+        }
+        lastBlock = -1;
+    }
+
+    private void setLeaf(int block) {
+        TIntArrayList rows = blocks.get(block);
+        int leaf = (leaves + block) * NODE_INTS;
+        for (int i = 0; i < NODE_INTS; i++) {
+            tree[leaf + i] = 0;
+        }
+
+        for (int i = 0; i < rows.size(); i += ROW_INTS) {
+            for (int kind = 0; kind < KINDS; kind++) {
+                int pos = leaf + kind * 3;
+                int row = i + kind * 3;
+                tree[pos + MAX_SUFFIX] = Math.max(rows.get(row + MAX_SUFFIX), rows.get(row + SUM) + tree[pos + MAX_SUFFIX]);
+                tree[pos + MIN_PREFIX] = Math.min(tree[pos + MIN_PREFIX], tree[pos + SUM] + rows.get(row + MIN_PREFIX));
+                tree[pos + SUM] += rows.get(row + SUM);
+            }
+        }
+        tree[leaf + ROWS] = rows.size() / ROW_INTS;
+    }
+
+    private void combine(int node) {
+        int pos = node * NODE_INTS;
+        int left = 2 * node * NODE_INTS;
+        int right = left + NODE_INTS;
+        for (int i = 0; i < ROW_INTS; i += 3) {
+            tree[pos + i + SUM] = tree[left + i + SUM] + tree[right + i + SUM];
+            tree[pos + i + MIN_PREFIX] = Math.min(tree[left + i + MIN_PREFIX],
+                    tree[left + i + SUM] + tree[right + i + MIN_PREFIX]);
+            tree[pos + i + MAX_SUFFIX] = Math.max(tree[right + i + MAX_SUFFIX],
+                    tree[right + i + SUM] + tree[left + i + MAX_SUFFIX]);
+        }
+        tree[pos + ROWS] = tree[left + ROWS] + tree[right + ROWS];
+    }
+}
@@ -0,0 +1,154 @@
+package Editor;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class BracketIndexTest extends Assert {
+
+    private static final String brackets = "()[]{}";
+    private Random rand;
+
+    @Before
+    public void init() {
+        rand = new Random();
+    }
+
+    // brackets of a row as int[]: summary for index
+    private static int[] summary(String row) {
+        WordsArrayList words = new WordsArrayList();
+        LineParser lineParser = new LineParser(FileType.Java, words);
+        lineParser.parseLine(row, 0, row.length(), false);
+        TIntArrayList res = new TIntArrayList();
+        BracketIndex.addRow(row, 0, words, 0, words.size(), res);
+        return res.toArray();
+    }
+
+    private String randomRow() {
+        StringBuilder row = new StringBuilder();
+        for (int i = rand.nextInt(4); i > 0; i--) {
+            row.append(rand.nextInt(3) == 0 ? 'a' : brackets.charAt(rand.nextInt(brackets.length())));
+        }
+        return row.toString();
+    }
+
+    private static int value(char ch, int kind) {
+        return BracketIndex.kind(ch) != kind ? 0 : BracketIndex.isOpen(ch) ? 1 : -1;
+    }
+
+    @Test
+    public void testKindOfChars() {
+        for (char ch = 0; ch < Character.MAX_VALUE; ch++) {
+            int i = brackets.indexOf(ch);
+            assertEquals(i < 0 ? -1 : i / 2, BracketIndex.kind(ch));
+            assertEquals(i >= 0 && i % 2 == 0, BracketIndex.isOpen(ch));
+        }
+    }
+
+    @Test
+    public void testMillionRowsInsertedAtOnce() {
+        BracketIndex index = new BracketIndex();
+        index.insert(0, 1 << 20);
+        TIntArrayList values = new TIntArrayList();
+        values.add(summary("{"));
+        index.set(1 << 19, values);
+        assertEquals(1 << 20, index.size());
+        assertEquals(1 << 19, index.findOpen(2, (1 << 20) - 1, 1));
+    }
+
+    @Test
+    public void testFindEqualsScanning() {
+        for (int test = 0; test < 20; test++) {
+            BracketIndex index = new BracketIndex();
+            ArrayList<String> rows = new ArrayList<>();
+
+            for (int operation = 0; operation < 300; operation++) {
+                int row = rand.nextInt(rows.size() + 1);
+                switch (rand.nextInt(4)) {
+                    case 0:
+                        int count = rand.nextInt(rand.nextBoolean() ? 5 : 300) + 1;
+                        index.insert(row, count);
+                        for (int i = 0; i < count; i++) {
+                            rows.add(row, "");
+                        }
+                        break;
+                    case 1:
+                        count = Math.min(rows.size() - row, rand.nextInt(rand.nextBoolean() ? 5 : 300));
+                        index.remove(row, count);
+                        rows.subList(row, row + count).clear();
+                        break;
+                    case 2:
+                        count = Math.min(rows.size() - row, rand.nextInt(200));
+                        index.clear(row, count);
+                        for (int i = row; i < row + count; i++) {
+                            rows.set(i, "");
+                        }
+                        break;
+                    default:
+                        count = Math.min(rows.size() - row, rand.nextInt(200));
+                        TIntArrayList values = new TIntArrayList();
+                        for (int i = row; i < row + count; i++) {
+                            rows.set(i, randomRow());
+                            values.add(summary(rows.get(i)));
+                        }
+                        index.set(row, values);
+                }
+                assertEquals(rows.size(), index.size());
+                if (rows.isEmpty()) {
+                    continue;
+                }
+
+                for (int i = 0; i < 10; i++) {
+                    row = rand.nextInt(rows.size());
+                    int kind = rand.nextInt(3);
+                    int need = rand.nextInt(3) + 1;
+
+                    int expected = -1;
+                    int expectedNeed = need;
+                    int k = need;
+                    for (int r = row + 1; r < rows.size() && expected < 0; r++) {
+                        for (char ch : rows.get(r).toCharArray()) {
+                            k += value(ch, kind);
+                            if (k == 0) {
+                                expected = r;
+                                break;
+                            }
+                        }
+                        if (expected < 0) {
+                            expectedNeed = k;
+                        }
+                    }
+                    assertEquals(expected, index.findClose(kind, row, need));
+                    if (expected >= 0) {
+                        assertEquals(expectedNeed, index.getNeed());
+                    }
+
+                    expected = -1;
+                    expectedNeed = need;
+                    k = need;
+                    for (int r = row - 1; r >= 0 && expected < 0; r--) {
+                        String s = rows.get(r);
+                        for (int j = s.length() - 1; j >= 0; j--) {
+                            k -= value(s.charAt(j), kind);
+                            if (k == 0) {
+                                expected = r;
+                                break;
+                            }
+                        }
+                        if (expected < 0) {
+                            expectedNeed = k;
+                        }
+                    }
+                    assertEquals(expected, index.findOpen(kind, row, need));
+                    if (expected >= 0) {
+                        assertEquals(expectedNeed, index.getNeed());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package Editor;
+
+import javax.swing.*;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+
+// Opens big file in background: the first screen is shown as soon as it is indexed,
+// the rest of lines are added to the end of the document by batches
+class DocumentLoader extends SwingWorker<Void, Void> {
+
+    private static final int FIRST_BATCH_LINES = 256;
+    private static final int BATCH_LINES = 1 << 16;
+
+    private final ETextArea area;
+    private final File file;
+    private MappedFile mappedFile;
+    private boolean isFirstBatchAdded;
+
+    DocumentLoader(ETextArea area, File file) {
+        this.area = area;
+        this.file = file;
+        isFirstBatchAdded = false;
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        mappedFile = new MappedFile(file.toPath());
+        MappedFile.Indexer indexer = mappedFile.indexer();
+
+        int batchLines = FIRST_BATCH_LINES;
+        do {
+            MappedFile.LineBatch batch = indexer.next(batchLines);
+            try {
+                SwingUtilities.invokeAndWait(() -> addLines(batch));
+            } catch (InvocationTargetException exception) {
+                if (exception.getCause() instanceof Exception) {
+                    throw (Exception) exception.getCause();
+                }
+                throw (Error) exception.getCause();
+            }
+
+            batchLines = BATCH_LINES;
+            setProgress((int) (100 * indexer.getPosition() / Math.max(mappedFile.byteSize(), 1)));
+        } while (!indexer.isDone() && !isCancelled());
+
+        return null;
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+
+        try {
+            get();
+        } catch (Exception exception) {
+            System.out.println("Problem with opening file");
+            exception.printStackTrace();
+        }
+    }
+
+    // EDT
+    private void addLines(MappedFile.LineBatch batch) {
+        if (isCancelled()) {
+            return;
+        }
+
+        int start = mappedFile.length();
+        mappedFile.addLines(batch);
+        if (isFirstBatchAdded) {
+            area.appendLines(mappedFile, start, batch.lengths);
+        } else {
+            area.setNewDocument(mappedFile, batch.lengths);
+            area.setFileName(file.getName(), true);
+            isFirstBatchAdded = true;
+        }
+    }
+}
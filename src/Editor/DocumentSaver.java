@@ -0,0 +1,148 @@
+package Editor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+// Writes text to a temporary file in the same directory by chunks and renames it to the target,
+// every line ends with the system line separator as Files.write does.
+// If the file exists, a symbolic link to it is followed and kept, and the new file gets permissions, owner,
+// group and ACL of the old one (owner and group only if the user may set them). A new file gets
+// rw-rw-rw- minus the umask, as Files.write gives
+class DocumentSaver {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final Set<PosixFilePermission> NEW_FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-rw-rw-");
+
+    public static void save(TextStorage text, Path path, IntConsumer progress) throws IOException {
+        Path target = Files.exists(path) ? path.toRealPath() : path.toAbsolutePath();
+        Path temp = createTempFile(target);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                write(text, channel, progress);
+                channel.force(false);
+            }
+
+            if (Files.exists(target)) {
+                copyAttributes(target, temp);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // the umask is applied to the mode of a created file, so it isn't read here
+    private static Path createTempFile(Path target) throws IOException {
+        Path directory = target.getParent();
+        String prefix = target.getFileName().toString();
+        if (!target.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(directory, prefix, ".tmp");
+        }
+        return Files.createTempFile(directory, prefix, ".tmp", PosixFilePermissions.asFileAttribute(NEW_FILE_PERMISSIONS));
+    }
+
+    private static void copyAttributes(Path source, Path target) throws IOException {
+        PosixFileAttributeView sourcePosix = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (sourcePosix != null) {
+            PosixFileAttributes attributes = sourcePosix.readAttributes();
+            PosixFileAttributeView targetPosix = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            // the group can be set only by its member, the owner only by root
+            try {
+                targetPosix.setGroup(attributes.group());
+            } catch (FileSystemException ignored) {
+            }
+            try {
+                targetPosix.setOwner(attributes.owner());
+            } catch (FileSystemException ignored) {
+            }
+            // after owner, its change clears setuid bits
+            targetPosix.setPermissions(attributes.permissions());
+        }
+
+        AclFileAttributeView sourceAcl = Files.getFileAttributeView(source, AclFileAttributeView.class);
+        if (sourceAcl != null) {
+            Files.getFileAttributeView(target, AclFileAttributeView.class).setAcl(sourceAcl.getAcl());
+        }
+    }
+
+    private static void write(TextStorage text, FileChannel channel, IntConsumer progress) throws IOException {
+        String separator = System.lineSeparator();
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        char[] chunk = new char[CHUNK_SIZE];
+        CharBuffer in = CharBuffer.allocate(CHUNK_SIZE * separator.length() + separator.length() + 1);
+        ByteBuffer out = ByteBuffer.allocateDirect((int) (in.capacity() * encoder.maxBytesPerChar()));
+
+        int length = text.length();
+        for (int pos = 0; pos < length; ) {
+            int n = Math.min(CHUNK_SIZE, length - pos);
+            text.getChars(pos, pos + n, chunk, 0);
+            if (separator.equals("\n")) {
+                in.put(chunk, 0, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    if (chunk[i] == '\n') {
+                        in.put(separator);
+                    } else {
+                        in.put(chunk[i]);
+                    }
+                }
+            }
+            pos += n;
+
+            in.flip();
+            encode(encoder, in, out, channel, false);
+            in.compact();
+            progress.accept((int) (100L * pos / length));
+        }
+
+        in.put(separator);
+        in.flip();
+        encode(encoder, in, out, channel, true);
+        encoder.flush(out);
+        writeAll(out, channel);
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer in, ByteBuffer out, FileChannel channel,
+                               boolean endOfInput) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(in, out, endOfInput);
+            writeAll(out, channel);
+        } while (result.isOverflow());
+    }
+
+    private static void writeAll(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
@@ -0,0 +1,143 @@
+package Editor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class DocumentSaverTest extends Assert {
+
+    private final static int countOfRandomLines = 20000;
+    private final static int maxLineLength = 50;
+    private final static String chars = "abc 123{}фыв中😀";
+
+    private static void assertSavedAsFilesWrite(List<String> lines) throws IOException {
+        Path expected = Files.createTempFile("editor", ".txt");
+        Path actual = Files.createTempFile("editor", ".txt");
+        try {
+            Files.write(expected, lines);
+            Files.write(actual, "old content, longer than the new one".getBytes());
+            DocumentSaver.save(new PieceTable(String.join("\n", lines)), actual, (e) -> { });
+
+            assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+        } finally {
+            Files.delete(expected);
+            Files.delete(actual);
+        }
+    }
+
+    @Test
+    public void testSaveVoidText() throws IOException {
+        assertSavedAsFilesWrite(Arrays.asList(""));
+    }
+
+    @Test
+    public void testSaveRandomText() throws IOException {
+        Random rand = new Random();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < countOfRandomLines; i++) {
+            StringBuilder line = new StringBuilder();
+            int len = rand.nextInt(maxLineLength);
+            for (int j = 0; j < len; j++) {
+                int k = rand.nextInt(chars.length() - 1);
+                line.append(Character.isHighSurrogate(chars.charAt(k)) ? "😀" : chars.substring(k, k + 1));
+            }
+            lines.add(line.toString());
+        }
+
+        assertSavedAsFilesWrite(lines);
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    @Test
+    public void testNewFileHasPermissionsAsFilesWrite() throws IOException {
+        Path directory = Files.createTempDirectory("editor");
+        Path expected = directory.resolve("expected.txt");
+        Path actual = directory.resolve("actual.txt");
+        try {
+            Files.write(expected, Arrays.asList("a"));
+            DocumentSaver.save(new PieceTable("a"), actual, (e) -> { });
+
+            assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+            if (isPosix(directory)) {
+                assertEquals(Files.getPosixFilePermissions(expected), Files.getPosixFilePermissions(actual));
+            }
+        } finally {
+            Files.deleteIfExists(expected);
+            Files.deleteIfExists(actual);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testPermissionsAndOwnerAreKept() throws IOException {
+        Path path = Files.createTempFile("editor", ".txt");
+        try {
+            if (!isPosix(path)) {
+                return;
+            }
+            Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+            Files.setPosixFilePermissions(path, permissions);
+            PosixFileAttributes expected = Files.readAttributes(path, PosixFileAttributes.class);
+            DocumentSaver.save(new PieceTable("a"), path, (e) -> { });
+
+            PosixFileAttributes actual = Files.readAttributes(path, PosixFileAttributes.class);
+            assertEquals(permissions, actual.permissions());
+            assertEquals(expected.owner(), actual.owner());
+            assertEquals(expected.group(), actual.group());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testSymbolicLinkIsKept() throws IOException {
+        Path directory = Files.createTempDirectory("editor");
+        Path file = directory.resolve("file.txt");
+        Path link = directory.resolve("link.txt");
+        try {
+            Files.write(file, Arrays.asList("old"));
+            try {
+                Files.createSymbolicLink(link, file.getFileName());
+            } catch (UnsupportedOperationException | IOException e) {
+                return;
+            }
+            DocumentSaver.save(new PieceTable("new"), link, (e) -> { });
+
+            assertTrue(Files.isSymbolicLink(link));
+            assertEquals(Arrays.asList("new"), Files.readAllLines(file));
+            assertEquals(2, directory.toFile().list().length);
+        } finally {
+            Files.deleteIfExists(link);
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testProgressIsReported() throws IOException {
+        Path path = Files.createTempFile("editor", ".txt");
+        try {
+            List<Integer> progress = new ArrayList<>();
+            DocumentSaver.save(new PieceTable(new String(new char[1 << 20])), path, progress::add);
+
+            assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+            assertEquals((1 << 20) + System.lineSeparator().length(), Files.size(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.io.IOException;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -19,16 +20,23 @@ class EDocument {
     private static final Pattern javaFilePattern = Pattern.compile(".*\\.java");
     private static final Pattern jsFilePattern = Pattern.compile(".*\\.js");
     private static final String TAB = "    ";
-    private final TIntArrayList length;
+    private final LineIndex length;
     private final Words dataInWords;
     private final Parser parser;
     private final Clipboard clipboard;
-    private final StringBuilder data;
+    private final TextStorage data;
     private final JScrollBar scrollBar;
     private int width;
     private int height;
     private int widthOffset;
     private int heightOffset;
+    private int viewportRow; // row and offset of the last asked start of the screen, row is -1 if unknown
+    private int viewportPos;
+    private volatile Viewport viewport; // the last published snapshot of the screen
+    private int viewportVersions;
+    private int rowVersions; // versions of rows of snapshots
+    private int changedStartRow; // rows changed since the last snapshot, start > end if there are no ones
+    private int changedEndRow;
     private int column;
     private int row;
     private int pos;
@@ -38,8 +46,13 @@ class EDocument {
     private int startSelectionRow;
     private int startSelectionColumn;
     private FileType fileType;
+    private RowsListener rowsListener;
 
     public EDocument(JScrollBar scrollBar) {
+        this(scrollBar, new PieceTable());
+    }
+
+    public EDocument(JScrollBar scrollBar, TextStorage data) {
 
         column = 0;
         row = 0;
@@ -51,13 +64,17 @@ class EDocument {
         isShiftPressed = false;
         existSelection = false;
         fileType = FileType.Text;
+        viewportRow = -1;
+        changedStartRow = 0;
+        changedEndRow = Integer.MAX_VALUE;
 
         this.scrollBar = scrollBar;
 
         clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
 
-        data = new StringBuilder();
-        length = new TIntArrayList();
+        this.data = data;
+        data.reset("");
+        length = new LineIndex();
         length.add(0);
 
         dataInWords = new Words();
@@ -65,9 +82,38 @@ class EDocument {
         parser = new Parser(this, dataInWords, data, length);
 
         updatePosition();
+        publishViewport();
     }
 
     public void recreateDocument(List<String> initData) {
+        if (initData == null || initData.isEmpty()) {
+            recreateDocument("", new int[0]);
+            return;
+        }
+
+        int size = initData.size() - 1;
+        for (String s: initData) {
+            size += s.length();
+        }
+
+        char[] text = new char[size];
+        int[] lineLengths = new int[initData.size()];
+        int pos = 0;
+        int row = 0;
+        for (String s: initData) {
+            s.getChars(0, s.length(), text, pos);
+            pos += s.length();
+            if (pos < size) {
+                text[pos++] = '\n';
+            }
+            lineLengths[row++] = s.length();
+        }
+
+        recreateDocument(CharBuffer.wrap(text), lineLengths);
+    }
+
+    // text is lines separated by '\n', it isn't copied
+    public void recreateDocument(CharSequence text, int[] lineLengths) {
         column = 0;
         row = 0;
         pos = 0;
@@ -78,38 +124,55 @@ class EDocument {
         existSelection = false;
         fileType = FileType.Text;
 
-        data.delete(0, data.length());
         length.clear();
-        dataInWords.clear();
+        parser.setFileType(fileType);
 
-        if (initData != null && initData.size() > 0) {
-            for (String s: initData) {
-                data.append(s);
-                data.append('\n');
-                length.add(s.length());
-            }
-            data.delete(data.length() - 1, data.length());
+        data.reset(text);
+        if (lineLengths.length > 0) {
+            length.insert(0, lineLengths);
         } else {
             length.add(0);
         }
 
+        rowsChanged(0, Integer.MAX_VALUE);
         updatePosition();
+        publishViewport();
+    }
+
+    // text[start, text.length()) is '\n' + lines, they are added to the end of the document
+    public void appendLines(CharSequence text, int start, int[] lineLengths) {
+        if (lineLengths.length == 0) {
+            return;
+        }
+
+        int oldSize = length.size();
+        data.append(text, start, text.length());
+        length.insert(oldSize, lineLengths);
+        rowsChanged(oldSize, Integer.MAX_VALUE);
+
+        if (fileType != FileType.Text) {
+            parser.ensureParsed(getVisibleEndRow());
+        }
+        updateScrollBar();
+        publishViewport();
     }
 
     // add or remove line
     private void addLine(int row, int len) {
         length.insert(row, len);
+        rowsChanged(row, Integer.MAX_VALUE);
         if (fileType != FileType.Text) {
             parser.bracketLightOff();
-            dataInWords.add(row);
+            parser.addLines(row, 1);
         }
     }
 
     private void addLines(int row, int[] len) {
         length.insert(row, len);
+        rowsChanged(row, Integer.MAX_VALUE);
         if (fileType != FileType.Text) {
             parser.bracketLightOff();
-            dataInWords.addVoidLines(row, len.length);
+            parser.addLines(row, len.length);
         }
     }
 
@@ -119,9 +182,10 @@ class EDocument {
 
     private void removeLines(int startRow, int endRow) {
         length.remove(startRow, endRow + 1 - startRow);
+        rowsChanged(startRow, Integer.MAX_VALUE);
         if (fileType != FileType.Text) {
             parser.bracketLightOff();
-            dataInWords.remove(startRow, endRow);
+            parser.removeLines(startRow, endRow);
         }
 
     }
@@ -140,17 +204,19 @@ class EDocument {
 
         if (startRow >= 0 && endRow >= 0) {
             isShiftPressed = false;
+            rowsChanged(startRow, endRow);
         }
 
         if (fileType != FileType.Text) {
             parser.bracketLightOff();
 
             if (startRow >= 0 && endRow >= 0) {
-                parser.parse(startRow, endRow);
+                parser.parse(startRow, endRow, getVisibleEndRow());
             }
 
             parser.bracketLight(column, row, pos);
         }
+        publishViewport();
     }
 
     private void updateOffset() {
@@ -229,6 +295,7 @@ class EDocument {
         row = length.size() - 1;
         column = length.get(row);
         existSelection = true;
+        publishViewport();
     }
 
     public void paste() {
@@ -359,14 +426,15 @@ class EDocument {
                 column = 0;
                 if (row == length.size()) {
                     addLine(length.size(), 0);
-                    data.append('\n');
+                    data.insert(data.length(), "\n");
                     updateWithChanges(row);
                 } else {
                     updateWithoutChanges();
                 }
             } else {
                 if (column <= length.get(row) - 1) {
-                    data.replace(pos, pos + 1, ch);
+                    data.delete(pos, pos + 1);
+                    data.insert(pos, ch);
                 } else {
                     data.insert(pos, ch);
                     length.set(row, length.get(row) + 1);
@@ -428,6 +496,7 @@ class EDocument {
         startSelectionColumn = this.column;
         startSelectionRow = this.row;
         existSelection = true;
+        publishViewport();
     }
 
     public  void mouseMoved(int column, int row) {
@@ -498,12 +567,14 @@ class EDocument {
     public void setExistSelectionFalse() {
         if (!isShiftPressed) {
             existSelection = false;
+            publishViewport();
         }
     }
 
     public void setWindowSize(int width, int height) {
         this.width = width;
         this.height = height;
+        publishViewport();
     }
 
     public void setShiftPressed(boolean shiftPressed) {
@@ -517,6 +588,7 @@ class EDocument {
         if (shiftPressed) {
             existSelection = true;
         }
+        publishViewport();
     }
 
     public void switchInsert(){
@@ -537,22 +609,152 @@ class EDocument {
         }
 
         boolean needParse = parser.setFileType(fileType);
+        rowsChanged(0, Integer.MAX_VALUE); // colors of words
         if (fileType != FileType.Text) {
-            if (open) {
-                parser.forceParse(0, length.size());
+            if (open || needParse) {
+                // only visible lines are parsed now, the rest in background or when they are needed
+                parser.reset();
+                parser.ensureParsed(getVisibleEndRow());
                 updateWithoutChanges();
-            } else {
-                if (needParse) {
-                    parser.forceParse(0, length.size());
-                    updateWithoutChanges();
-                }
             }
         }
+        publishViewport();
+    }
+
+    // Listener of changes of rows
+
+    interface RowsListener {
+        // text or words of rows [startRow, endRow] are changed, endRow is Integer.MAX_VALUE if all rows
+        // after startRow are changed or moved
+        void rowsChanged(int startRow, int endRow);
+
+        // only colors of words in columns [startColumn, endColumn) of row are changed
+        void columnsChanged(int row, int startColumn, int endColumn);
+    }
+
+    public void setRowsListener(RowsListener rowsListener) {
+        this.rowsListener = rowsListener;
+    }
+
+    void rowsChanged(int startRow, int endRow) {
+        if (startRow < viewportRow) {
+            viewportRow = -1;
+        }
+        changedStartRow = Math.min(changedStartRow, startRow);
+        changedEndRow = Math.max(changedEndRow, endRow);
+        if (rowsListener != null) {
+            rowsListener.rowsChanged(startRow, endRow);
+        }
+    }
+
+    void columnsChanged(int row, int startColumn, int endColumn) {
+        changedStartRow = Math.min(changedStartRow, row);
+        changedEndRow = Math.max(changedEndRow, row);
+        if (rowsListener != null) {
+            rowsListener.columnsChanged(row, startColumn, endColumn);
+        }
+    }
+
+    // Lazy parsing
+
+    public void ensureParsed(int endRow) {
+        if (fileType != FileType.Text) {
+            parser.ensureParsed(endRow);
+            publishViewport();
+        }
+    }
+
+    public Parser.Pass createParsePass(int rows) {
+        return parser.createPass(rows);
+    }
+
+    public boolean publishParsePass(Parser.Pass pass) {
+        if (fileType != FileType.Text && parser.publish(pass)) {
+            publishViewport();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isAllParsed() {
+        return fileType == FileType.Text || parser.isAllParsed();
+    }
+
+    private int getVisibleEndRow() {
+        return heightOffset + height + 2;
+    }
+
+    // Snapshot of the screen
+
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    // a new snapshot is published if rows of the screen, offsets, caret or selection are changed since the last one.
+    // It has rows from the one above the screen, glyphs of which cross the first row, to the one below it
+    private void publishViewport() {
+        if (fileType != FileType.Text) {
+            parser.ensureParsed(getVisibleEndRow() + 1);
+        }
+
+        int topRow = Math.min(heightOffset, length.size());
+        int startRow = Math.max(0, topRow - 1);
+        int endRow = Math.max(startRow, Math.min(length.size(), getVisibleEndRow() + 1));
+        boolean isFileTypeText = fileType == FileType.Text;
+
+        int[] selection = isExistSelection() ? getSelectionInterval() : null;
+
+        Viewport old = viewport;
+        boolean isChanged = changedStartRow < endRow && changedEndRow >= startRow;
+        boolean isSameRows = old != null && !isChanged && old.getStartRow() == startRow &&
+                old.getEndRow() == endRow && old.getLineCount() == length.size() &&
+                old.isFileTypeText() == isFileTypeText;
+        if (isSameRows && old.getHeightOffset() == heightOffset && old.getWidthOffset() == widthOffset &&
+                old.getCaretRow() == row && old.getCaretColumn() == column && old.isSameSelection(selection)) {
+            return;
+        }
+
+        // only the caret or selection is moved, e.g. by arrows, rows are shared
+        Viewport.Row[] rows = isSameRows ? old.getRows() : createRows(old, startRow, endRow, topRow);
+        changedStartRow = Integer.MAX_VALUE;
+        changedEndRow = Integer.MIN_VALUE;
+        viewport = new Viewport(++viewportVersions, startRow, rows, length.size(), heightOffset, widthOffset,
+                isFileTypeText, row, column, selection);
+    }
+
+    // rows which aren't changed since the old snapshot are taken from it
+    private Viewport.Row[] createRows(Viewport old, int startRow, int endRow, int topRow) {
+        Viewport.Row[] rows = new Viewport.Row[endRow - startRow];
+        int pos = getViewportStart();
+        if (startRow < topRow) {
+            pos -= length.get(startRow) + 1;
+        }
+        for (int row = startRow; row < endRow; pos += length.get(row) + 1, row++) {
+            boolean isRowChanged = row >= changedStartRow && row <= changedEndRow;
+            rows[row - startRow] = old != null && old.contains(row) && !isRowChanged ? old.getRow(row) :
+                    createRow(row, pos);
+        }
+        return rows;
+    }
+
+    private Viewport.Row createRow(int row, int pos) {
+        char[] chars = new char[length.get(row)];
+        data.getChars(pos, pos + chars.length, chars, 0);
+
+        int words = fileType != FileType.Text && row < dataInWords.size() ? dataInWords.rowSize(row) : 0;
+        int[] starts = new int[words];
+        int[] ends = new int[words];
+        Word.Type[] types = new Word.Type[words];
+        if (words > 0) {
+            dataInWords.copyRow(row, starts, ends, types);
+        }
+        return new Viewport.Row(++rowVersions, chars, starts, ends, types);
     }
 
     public void updateHeightOffset(int diff) {
         heightOffset += diff;
         updateOffset();
+        publishViewport();
     }
 
     public boolean isExistSelection() {
@@ -566,7 +768,10 @@ class EDocument {
     }
 
     public void setHeightOffset(int value) {
-        heightOffset = value;
+        if (value != heightOffset) {
+            heightOffset = value;
+            publishViewport();
+        }
     }
 
     public int getWidthOffset() {
@@ -582,13 +787,24 @@ class EDocument {
     }
 
     public int getPos(int row, int column) {
-        int res = 0;
-        for (int i = 0; i < row; i++) {
-            res += length.get(i) + 1;
-        }
-        res += column;
+        return length.getLineStart(row) + column;
+    }
 
-        return res;
+    // offset of the first row of the screen, it is moved from the last one when the screen is scrolled a bit
+    public int getViewportStart() {
+        int row = Math.min(heightOffset, length.size());
+        if (viewportRow < 0 || Math.abs(row - viewportRow) > height) {
+            viewportPos = length.getLineStart(row);
+        } else {
+            for (; viewportRow < row; viewportRow++) {
+                viewportPos += length.get(viewportRow) + 1;
+            }
+            for (; viewportRow > row; viewportRow--) {
+                viewportPos -= length.get(viewportRow - 1) + 1;
+            }
+        }
+        viewportRow = row;
+        return viewportPos;
     }
 
     int[] getSelectionInterval() {
@@ -621,11 +837,15 @@ class EDocument {
         return (List) res;
     }
 
-    public StringBuilder getAllDataInString() {
+    public TextStorage getAllDataInString() {
         return data;
     }
 
-    public TIntArrayList getAllLinesLength() {
+    public TextStorage getTextSnapshot() {
+        return data.snapshot();
+    }
+
+    public LineIndex getAllLinesLength() {
         return length;
     }
 }
\ No newline at end of file
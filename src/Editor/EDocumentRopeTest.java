@@ -0,0 +1,9 @@
+package Editor;
+
+public class EDocumentRopeTest extends EDocumentTest {
+
+    @Override
+    protected TextStorage createTextStorage() {
+        return new Rope();
+    }
+}
@@ -12,8 +12,10 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.stream.Collectors;
 
 public class EDocumentTest extends Assert {
 
@@ -102,13 +104,17 @@ public class EDocumentTest extends Assert {
         }
     }
 
+    protected TextStorage createTextStorage() {
+        return new PieceTable();
+    }
+
     @Before
     public void init() {
         clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
         randomText = new RandomText();
         rand = new Random();
         JScrollBar scrollbar = new JScrollBar();
-        doc = new EDocument(scrollbar);
+        doc = new EDocument(scrollbar, createTextStorage());
         doc.setWindowSize(windowColumnSize, windowRowSize);
         inputData = randomText.nextText(maxCountOfRows, maxLineLength);
         doc.recreateDocument(fromStringBuilderListToStringList(inputData));
@@ -127,6 +133,247 @@ public class EDocumentTest extends Assert {
         recreateDocWithInputData();
     }
 
+    @Test
+    public void testAppendLinesEqualsRecreateDocument() {
+        String[] lines = {"a /* b {", "c", "d */ e (", ")", "} // f", "g"};
+        for (int firstLines = 1; firstLines < lines.length; firstLines++) {
+            recreateDoc(lines);
+            Words expected = doc.getAllDataInWords();
+            List<Word> expectedWords = new ArrayList<>();
+            for (int i = 0; i < expected.size(); i++) {
+                for (int j = 0; j < expected.rowSize(i); j++) {
+                    expectedWords.add(expected.get(i, j));
+                }
+            }
+
+            String text = String.join("\n", lines);
+            int[] lineLengths = new int[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                lineLengths[i] = lines[i].length();
+            }
+            int start = String.join("\n", Arrays.asList(lines).subList(0, firstLines)).length();
+
+            doc = new EDocument(new JScrollBar(), createTextStorage());
+            doc.setWindowSize(windowColumnSize, windowRowSize);
+            doc.recreateDocument(text.substring(0, start), Arrays.copyOf(lineLengths, firstLines));
+            doc.setFileName(javaFileName, true);
+            doc.appendLines(text, start, Arrays.copyOfRange(lineLengths, firstLines, lines.length));
+
+            assertEquals(Arrays.asList(lines), doc.getAllDataInLines());
+            Words actual = doc.getAllDataInWords();
+            int k = 0;
+            for (int i = 0; i < actual.size(); i++) {
+                for (int j = 0; j < actual.rowSize(i); j++) {
+                    Word word = actual.get(i, j);
+                    assertEquals(expectedWords.get(k).start, word.start);
+                    assertEquals(expectedWords.get(k).end, word.end);
+                    assertEquals(expectedWords.get(k++).type, word.type);
+                }
+            }
+            assertEquals(expectedWords.size(), k);
+        }
+    }
+
+    @Test
+    public void testLazyParsingEqualsFullParsing() {
+        String[] pieces = {"/*", "*/", "//", " ", "{", "}", "a", "("};
+        inputData = new ArrayList<>();
+        for (int i = 0; i < 5 * windowRowSize; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int j = rand.nextInt(6); j > 0; j--) {
+                line.append(pieces[rand.nextInt(pieces.length)]);
+            }
+            inputData.add(line);
+        }
+        recreateDocWithInputData();
+        assertEquals(false, doc.isAllParsed());
+
+        String chars = "/*{} a\n";
+        Parser.Pass pass = null;
+        for (int i = 0; i < countOfRandomOperations / 10; i++) {
+            int size = doc.getAllLinesLength().size();
+            mouseClickAt(rand.nextInt(size), rand.nextInt(10));
+            switch (rand.nextInt(6)) {
+                case 0:
+                    doc.backspace();
+                    break;
+                case 1:
+                    doc.delete();
+                    break;
+                case 2:
+                    doc.ensureParsed(rand.nextInt(size));
+                    break;
+                case 3:
+                    // pass can be published after few changes, then it must be thrown away
+                    if (pass == null) {
+                        pass = doc.createParsePass(rand.nextInt(40) + 1);
+                    } else {
+                        pass.run();
+                        doc.publishParsePass(pass);
+                        pass = null;
+                    }
+                    break;
+                default:
+                    doc.insertChar(chars.charAt(rand.nextInt(chars.length())));
+                    break;
+            }
+        }
+        doc.ensureParsed(Integer.MAX_VALUE);
+        assertEquals(true, doc.isAllParsed());
+        List<Word> actual = getAllWords();
+
+        doc.recreateDocument(doc.getAllDataInLines().stream().map(CharSequence::toString)
+                .collect(Collectors.toList()));
+        doc.setFileName(javaFileName, true);
+        doc.ensureParsed(Integer.MAX_VALUE);
+        List<Word> expected = getAllWords();
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).start, actual.get(i).start);
+            assertEquals(expected.get(i).end, actual.get(i).end);
+            assertEquals(expected.get(i).type, actual.get(i).type);
+        }
+    }
+
+    @Test
+    public void testViewportStartEqualsPosRandom() {
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            switch (rand.nextInt(6)) {
+                case 0:
+                    doc.updateHeightOffset(rand.nextInt(21) - 10);
+                    break;
+                case 1:
+                    doc.updateHeightOffset(rand.nextInt(2 * maxCountOfRows) - maxCountOfRows);
+                    break;
+                case 2:
+                    setUpCaretRandom();
+                    doc.insertChar(rand.nextBoolean() ? '\n' : 'a');
+                    break;
+                case 3:
+                    setUpCaretRandom();
+                    doc.backspace();
+                    break;
+                case 4:
+                    setUpCaretRandom();
+                    doc.mouseMoved(rand.nextInt(windowColumnSize), rand.nextInt(windowRowSize));
+                    doc.delete();
+                    break;
+                default:
+                    randomNavigationFunction();
+            }
+
+            int row = Math.min(doc.getHeightOffset(), doc.getAllLinesLength().size());
+            assertEquals(doc.getPos(row, 0), doc.getViewportStart());
+        }
+    }
+
+    @Test
+    public void testViewportEqualsDocumentRandom() {
+        Viewport previous = doc.getViewport();
+        List<String> previousText = getViewportText(previous);
+        for (int i = 0; i < countOfRandomOperations / 10; i++) {
+            switch (rand.nextInt(7)) {
+                case 0:
+                    doc.updateHeightOffset(rand.nextInt(2 * maxCountOfRows) - maxCountOfRows);
+                    break;
+                case 1:
+                    setUpCaretRandom();
+                    doc.insertChar("a{}/*\n ".charAt(rand.nextInt(7)));
+                    break;
+                case 2:
+                    setUpCaretRandom();
+                    doc.backspace();
+                    break;
+                case 3:
+                    doc.setWindowSize(windowColumnSize, rand.nextInt(windowRowSize));
+                    break;
+                case 4:
+                    doc.selectAll();
+                    break;
+                case 5:
+                    doc.setShiftPressed(rand.nextBoolean());
+                    break;
+                default:
+                    randomNavigationFunction();
+            }
+
+            // a published snapshot isn't changed
+            assertEquals(previousText, getViewportText(previous));
+
+            Viewport viewport = doc.getViewport();
+            List<CharSequence> lines = doc.getAllDataInLines();
+            Words words = doc.getAllDataInWords();
+            assertEquals(lines.size(), viewport.getLineCount());
+            assertEquals(doc.getHeightOffset(), viewport.getHeightOffset());
+            assertEquals(doc.getWidthOffset(), viewport.getWidthOffset());
+            assertEquals(doc.getCaretRow(), viewport.getCaretRow());
+            assertEquals(doc.getCaretColumn(), viewport.getCaretColumn());
+            assertEquals(doc.isExistSelection(), viewport.isExistSelection());
+            if (doc.isExistSelection()) {
+                assertArrayEquals(doc.getSelectionInterval(), viewport.getSelectionInterval());
+            }
+            assertTrue(viewport.getStartRow() <= Math.max(0, doc.getHeightOffset() - 1));
+            for (int row = viewport.getStartRow(); row < viewport.getEndRow(); row++) {
+                Viewport.Row line = viewport.getRow(row);
+                assertEquals(lines.get(row).toString(), new String(line.getChars()));
+                assertEquals(words.rowSize(row), line.wordCount());
+                for (int j = 0; j < line.wordCount(); j++) {
+                    assertEquals(words.startAt(row, j), line.startAt(j));
+                    assertEquals(words.endAt(row, j), line.endAt(j));
+                    assertEquals(words.typeAt(row, j), line.typeAt(j));
+                }
+            }
+
+            previous = viewport;
+            previousText = getViewportText(previous);
+        }
+    }
+
+    private static List<String> getViewportText(Viewport viewport) {
+        List<String> res = new ArrayList<>();
+        for (int row = viewport.getStartRow(); row < viewport.getEndRow(); row++) {
+            res.add(new String(viewport.getRow(row).getChars()));
+        }
+        return res;
+    }
+
+    @Test
+    public void testParsePassIsNotPublishedAfterChange() {
+        recreateDoc(new String[]{"a", "/* b", "c */ {", "d", "e", "f"});
+        doc.setWindowSize(windowColumnSize, 1);
+        doc.setFileName(javaFileName, true);
+
+        Parser.Pass pass = doc.createParsePass(10);
+        pass.run();
+        mouseClickAt(0, 1);
+        doc.insertChar('b');
+        assertEquals(false, doc.publishParsePass(pass));
+
+        pass = doc.createParsePass(10);
+        pass.run();
+        assertEquals(true, doc.publishParsePass(pass));
+        assertEquals(true, doc.isAllParsed());
+        assertEquals(Word.Type.Comment, doc.getAllDataInWords().get(2, 0).type);
+        assertEquals(Word.Type.Bracket, doc.getAllDataInWords().get(2, 2).type);
+    }
+
+    // all words of the document, lighted brackets are shown as usual
+    private static List<Word> getAllWords() {
+        Words words = doc.getAllDataInWords();
+        List<Word> res = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            for (int j = 0; j < words.rowSize(i); j++) {
+                Word word = words.get(i, j);
+                if (word.type == Word.Type.BracketLight) {
+                    word.type = Word.Type.Bracket;
+                }
+                res.add(word);
+            }
+        }
+        return res;
+    }
+
     @Test
     public void testInputEqualsGetAllData() {
         List<CharSequence> outputData = doc.getAllDataInLines();
@@ -829,6 +1076,52 @@ public class EDocumentTest extends Assert {
         assertEquals(Word.Type.Bracket, doc.getAllDataInWords().get(1, 2).type);
     }
 
+    @Test
+    public void testParserBracketLightFarAway() {
+        String[] lines = new String[1000];
+        lines[0] = "a {";
+        for (int i = 1; i < lines.length - 1; i++) {
+            lines[i] = i % 7 == 0 ? "/* } */ ( { ) }" : "{ [ ] ( }";
+        }
+        lines[lines.length - 1] = "} {";
+        recreateDoc(lines);
+
+        // the pair isn't parsed yet, it is lit when background passes reach it
+        mouseClickAt(0, 3);
+        assertEquals(Word.Type.BracketLight, doc.getAllDataInWords().get(0, 2).type);
+        assertEquals(false, doc.isAllParsed());
+        while (!doc.isAllParsed()) {
+            Parser.Pass pass = doc.createParsePass(100);
+            pass.run();
+            assertEquals(true, doc.publishParsePass(pass));
+        }
+        assertEquals(Word.Type.BracketLight, doc.getAllDataInWords().get(0, 2).type);
+        assertEquals(Word.Type.BracketLight, doc.getAllDataInWords().get(lines.length - 1, 0).type);
+
+        mouseClickAt(lines.length - 1, 1);
+        assertEquals(Word.Type.BracketLight, doc.getAllDataInWords().get(0, 2).type);
+        assertEquals(Word.Type.BracketLight, doc.getAllDataInWords().get(lines.length - 1, 0).type);
+
+        mouseClickAt(lines.length - 1, 3);
+        assertEquals(Word.Type.BracketLight, doc.getAllDataInWords().get(lines.length - 1, 2).type);
+        assertEquals(Word.Type.Bracket, doc.getAllDataInWords().get(0, 2).type);
+    }
+
+    @Test
+    public void testParserBracketLightFarAwayIsNotLitAfterCaretMoved() {
+        String[] lines = new String[1000];
+        Arrays.fill(lines, "a");
+        lines[0] = "a {";
+        lines[lines.length - 1] = "}";
+        recreateDoc(lines);
+
+        mouseClickAt(0, 3);
+        mouseClickAt(0, 1);
+        doc.ensureParsed(Integer.MAX_VALUE);
+        assertEquals(Word.Type.Bracket, doc.getAllDataInWords().get(0, 2).type);
+        assertEquals(Word.Type.Bracket, doc.getAllDataInWords().get(lines.length - 1, 0).type);
+    }
+
     @Test
     public void testDeletionLightBracketNotBreakingParserBracketLightOff() {
         recreateDoc(new String[]{"12{[ }", "asd }"});
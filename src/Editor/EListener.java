@@ -106,7 +106,7 @@ class EListener implements AdjustmentListener, MouseMotionListener,
                 }
             }
 
-            area.repaint();
+            area.scheduleRepaint();
         }
     }
 
@@ -116,8 +116,8 @@ class EListener implements AdjustmentListener, MouseMotionListener,
     @Override
     public void mouseDragged(MouseEvent e) {
         if (isMouseDown) {
-            doc.mouseMoved(area.scaleToColumn(e.getX()), area.scaleToRow(e.getY()));
-            area.repaint();
+            doc.mouseMoved(area.scaleToColumn(e.getX(), e.getY()), area.scaleToRow(e.getY()));
+            area.scheduleRepaint();
         }
     }
 
@@ -132,11 +132,11 @@ class EListener implements AdjustmentListener, MouseMotionListener,
         if (e.getButton() == MouseEvent.BUTTON1) {
             isMouseDown = true;
             if (e.isShiftDown()) {
-                doc.mouseMoved(area.scaleToColumn(e.getX()), area.scaleToRow(e.getY()));
+                doc.mouseMoved(area.scaleToColumn(e.getX(), e.getY()), area.scaleToRow(e.getY()));
             } else {
-                doc.mousePressed(area.scaleToColumn(e.getX()), area.scaleToRow(e.getY()));
+                doc.mousePressed(area.scaleToColumn(e.getX(), e.getY()), area.scaleToRow(e.getY()));
             }
-            area.repaint();
+            area.scheduleRepaint();
         }
     }
 
@@ -144,8 +144,8 @@ class EListener implements AdjustmentListener, MouseMotionListener,
     public void mouseReleased(MouseEvent e) {
         if (e.getButton() == MouseEvent.BUTTON1) {
             isMouseDown = false;
-            doc.mouseMoved(area.scaleToColumn(e.getX()), area.scaleToRow(e.getY()));
-            area.repaint();
+            doc.mouseMoved(area.scaleToColumn(e.getX(), e.getY()), area.scaleToRow(e.getY()));
+            area.scheduleRepaint();
         }
     }
 
@@ -159,14 +159,14 @@ class EListener implements AdjustmentListener, MouseMotionListener,
     public void mouseWheelMoved(MouseWheelEvent e) {
         if (e.getScrollType() == MouseWheelEvent.WHEEL_UNIT_SCROLL) {
             doc.updateHeightOffset(e.getUnitsToScroll());
-            area.repaint();
+            area.scheduleRepaint();
         }
     }
 
     @Override
     public void adjustmentValueChanged(AdjustmentEvent e) {
         doc.setHeightOffset(e.getValue());
-        area.repaint();
+        area.scheduleRepaint();
     }
 
     @Override
@@ -1,31 +1,60 @@
 package Editor;
 
-import gnu.trove.list.array.TIntArrayList;
-
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.AdjustmentListener;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
 import java.util.List;
 
 class ETextArea extends JPanel{
 
-    private final int lineSpacing = 13;
-    private final int charWidth = 8;
+    private final int lineSpacing;
+    private final int charWidth; // width of a cell, x of columns of a row are given by metrics
     private final EListener listener;
     private final int minOffsetRight = 1;
     private final int minOffsetBottom = 1;
     private final EDocument doc;
+    private final ParseScheduler parseScheduler;
+    private final Theme theme;
+    private final TextMetrics metrics;
+    private final RenderCache renderCache;
+    private final RepaintScheduler repaintScheduler;
+    private final BackBuffer backBuffer; // versions of images of rows in it, 0 for empty space below the text
 
     public ETextArea(JScrollBar scrollBar) {
         setOpaque(true);
         doc = new EDocument(scrollBar);
+        theme = Theme.load();
+        metrics = new TextMetrics(getFontMetrics(theme.getFont()));
+        lineSpacing = metrics.getLineHeight();
+        charWidth = metrics.getCellWidth();
+
+        // only changed rows are drawn again, they are found by versions of rows of the viewport
+        renderCache = new RenderCache();
+        backBuffer = new BackBuffer(theme.isVolatileBuffer());
+        repaintScheduler = new RepaintScheduler(this, doc);
 
         listener = new EListener(doc, this);
         addMouseMotionListener(listener);
         addMouseListener(listener);
         addMouseWheelListener(listener);
         addComponentListener(listener);
+
+        // lines below the screen are parsed in background after every change of them, not by paint
+        parseScheduler = new ParseScheduler(doc);
+        doc.setRowsListener(new EDocument.RowsListener() {
+            @Override
+            public void rowsChanged(int startRow, int endRow) {
+                repaintScheduler.rowsChanged(startRow, endRow);
+                parseScheduler.schedule();
+            }
+
+            @Override
+            public void columnsChanged(int row, int startColumn, int endColumn) {
+                repaintScheduler.columnsChanged(row, startColumn, endColumn);
+            }
+        });
     }
 
     public KeyListener getKeyListener() {
@@ -38,6 +67,7 @@ class ETextArea extends JPanel{
 
     public void updateWindowSize() {
         doc.setWindowSize(getWidth() / charWidth - minOffsetRight, getHeight() / lineSpacing - minOffsetBottom);
+        repaint(); // rows which become visible
     }
 
     public void setNewDocument(List<String> list){
@@ -47,28 +77,81 @@ class ETextArea extends JPanel{
         repaint();
     }
 
+    public void setNewDocument(CharSequence text, int[] lineLengths){
+        doc.recreateDocument(text, lineLengths);
+        listener.setEDocument(doc);
+        updateWindowSize();
+        repaint();
+    }
+
+    public void appendLines(CharSequence text, int start, int[] lineLengths) {
+        doc.appendLines(text, start, lineLengths);
+        repaint();
+    }
+
     public void setFileName(String fileName, boolean open) {
         doc.setFileName(fileName, open);
         repaint();
     }
 
-    public List<CharSequence> getLines() {
-        return doc.getAllDataInLines();
+    // repaint in the next frame, only changed rows
+    public void scheduleRepaint() {
+        repaintScheduler.schedule();
     }
 
-    int scaleToColumn(int x) {
-        return x / charWidth + doc.getWidthOffset();
+    // repaints the caret at column of row
+    void repaintCaret(int row, int column) {
+        Viewport viewport = doc.getViewport();
+        int y = scaleFromRowToYPixel(viewport, row);
+        if (y + lineSpacing > 0 && y < getHeight()) {
+            repaint(scaleFromColumnToXPixel(viewport, row, column) - 1, y, 3, lineSpacing);
+        }
+    }
+
+    // repaints columns [startColumn, endColumn) of row, glyphs of row cross bands of neighbours
+    void repaintColumns(int row, int startColumn, int endColumn) {
+        Viewport viewport = doc.getViewport();
+        int y = scaleFromRowToYPixel(viewport, row - 1);
+        if (y + 3 * lineSpacing > 0 && y < getHeight()) {
+            int x = scaleFromColumnToXPixel(viewport, row, startColumn) - 1;
+            repaint(x, y, scaleFromColumnToXPixel(viewport, row, endColumn) + 1 - x, 3 * lineSpacing);
+        }
+    }
+
+    // repaints visible bands of rows [startRow, endRow]
+    void repaintRows(int startRow, int endRow) {
+        Viewport viewport = doc.getViewport();
+        startRow = Math.max(startRow, viewport.getHeightOffset() - 1);
+        endRow = Math.min(endRow, viewport.getHeightOffset() + getHeight() / lineSpacing + 1);
+        if (startRow <= endRow) {
+            int y = scaleFromRowToYPixel(viewport, startRow);
+            repaint(0, y, getWidth(), scaleFromRowToYPixel(viewport, endRow + 1) - y);
+        }
+    }
+
+    public TextStorage getTextSnapshot() {
+        return doc.getTextSnapshot();
+    }
+
+    // x and y are taken from the screen, so they are scaled by the snapshot drawn on it
+    int scaleToColumn(int x, int y) {
+        Viewport viewport = doc.getViewport();
+        return metrics.getColumn(viewport.getRow(scaleToRow(viewport, y)), x + viewport.getWidthOffset() * charWidth);
     }
 
     int scaleToRow(int y) {
-        return y / lineSpacing + doc.getHeightOffset();
+        return scaleToRow(doc.getViewport(), y);
+    }
+
+    private int scaleToRow(Viewport viewport, int y) {
+        return y / lineSpacing + viewport.getHeightOffset();
     }
 
-    private int scaleFromRowToYPixel(int row) {
-        return (row - doc.getHeightOffset()) * lineSpacing + 3;
+    private int scaleFromRowToYPixel(Viewport viewport, int row) {
+        return (row - viewport.getHeightOffset()) * lineSpacing;
     }
 
-    private int scaleFromColumnToXPixel(int column) {
+    private int scaleFromColumnToXPixel(Viewport viewport, int row, int column) {
         if (column < 0) {
             return 0;
         }
@@ -77,127 +160,145 @@ class ETextArea extends JPanel{
             return getWidth();
         }
 
-        return (column - doc.getWidthOffset()) * charWidth;
-    }
-
-    private Polygon createScaledPolygon(int x1, int y1, int x2, int y2) {
-        x1 = scaleFromColumnToXPixel(x1);
-        x2 = scaleFromColumnToXPixel(x2);
-
-        y1 = scaleFromRowToYPixel(y1);
-        y2 = scaleFromRowToYPixel(y2);
-        return createPolygon(x1, y1, x2, y2);
-    }
-
-    private Polygon createPolygon(int x1, int y1, int x2, int y2) {
-        y1 = Math.max(0, y1);
-        x1 = Math.max(0, x1);
-        y2 = Math.min(getHeight(), y2);
-        x2 = Math.min(getWidth(), x2);
-
-        int[] x = {x1,x2,x2,x1};
-        int[] y = {y1,y1,y2,y2};
-        return new Polygon(x,y, 4);
+        return metrics.getX(viewport.getRow(row), column) - viewport.getWidthOffset() * charWidth;
     }
 
     protected void paintComponent(Graphics graphics) {
         Graphics2D graphics2D = (Graphics2D) graphics;
+        graphics2D.setFont(theme.getFont());
+        graphics2D.addRenderingHints(theme.getHints());
 
-        // Draw background
-        graphics2D.setPaint(Color.WHITE);
-        graphics2D.fillPolygon(createPolygon(0, 0, this.getWidth(), this.getHeight()));
-        graphics2D.setFont(new Font("MONOSPACED", Font.PLAIN, 14));
+        // only the snapshot of the screen is read, it isn't changed while it is drawn
+        Viewport viewport = doc.getViewport();
+        drawRows(graphics2D, viewport);
 
-        if (doc.isExistSelection()) {
-            drawSelectionBackground(graphics2D);
-        }
+        drawCaret(graphics2D, viewport);
+    }
 
-        drawText(graphics2D);
+    // Row is drawn in its band [y - ascent, y - ascent + lineSpacing), y is the baseline of the row.
+    // Bands are taken from cache and copied to the back buffer only if they differ from the ones in it,
+    // caret is drawn over the buffer
+    private void drawRows(Graphics2D graphics2D, Viewport viewport) {
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        renderCache.setUp(graphics2D, getWidth(), lineSpacing);
+
+        int startRow = viewport.getHeightOffset();
+        int startY = scaleFromRowToYPixel(viewport, startRow);
+        int bands = (getHeight() - startY + lineSpacing - 1) / lineSpacing;
+        backBuffer.setUp(graphics2D, getWidth(), bands, lineSpacing);
+
+        // only bands crossing the clip are updated, e.g. the ones of the caret
+        int firstRow = startRow;
+        int lastRow = startRow + bands - 1;
+        Rectangle clip = graphics2D.getClipBounds();
+        if (clip != null) {
+            firstRow = Math.max(firstRow, startRow + clip.y / lineSpacing);
+            lastRow = Math.min(lastRow, startRow + (clip.y + clip.height - 1) / lineSpacing);
+        }
 
-        drawCaret(graphics2D);
-    }
+        int[] selection = viewport.getSelectionInterval();
+        Graphics2D bufferGraphics = backBuffer.createGraphics();
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (row > viewport.getLineCount()) {
+                // text of rows can't reach the rest
+                if (!backBuffer.contains(row, 0)) {
+                    bufferGraphics.setPaint(theme.getBackground());
+                    bufferGraphics.fillRect(0, backBuffer.getY(row), getWidth(), lineSpacing);
+                    backBuffer.set(row, 0);
+                }
+                continue;
+            }
 
-    private void drawSelectionBackground(Graphics2D graphics2D) {
-        int[] selection = doc.getSelectionInterval();
-        int startColumn = selection[0];
-        int startRow = selection[1];
-        int endColumn = selection[2];
-        int endRow = selection[3];
+            int selectionStart = 0;
+            int selectionEnd = 0;
+            if (selection != null && row >= selection[1] && row <= selection[3]) {
+                selectionStart = row == selection[1] ? scaleFromColumnToXPixel(viewport, row, selection[0]) : 0;
+                selectionEnd = row == selection[3] ? scaleFromColumnToXPixel(viewport, row, selection[2]) : getWidth();
+                selectionStart = Math.max(0, Math.min(selectionStart, getWidth()));
+                selectionEnd = Math.max(selectionStart, Math.min(selectionEnd, getWidth()));
+            }
 
-        graphics2D.setPaint(Color.LIGHT_GRAY);
-        graphics2D.fillPolygon(createScaledPolygon(-1, startRow, Integer.MAX_VALUE, endRow + 1));
+            BufferedImage image = renderCache.get(viewport, row, selectionStart, selectionEnd);
+            if (image == null) {
+                image = renderCache.put(viewport, row, selectionStart, selectionEnd);
+                Graphics2D rowGraphics = image.createGraphics();
+                rowGraphics.setRenderingHints(renderCache.getHints());
+                rowGraphics.setFont(theme.getFont());
+                drawRow(rowGraphics, viewport, row, selectionStart, selectionEnd);
+                rowGraphics.dispose();
+            }
+            if (!backBuffer.contains(row, renderCache.getVersion(row))) {
+                bufferGraphics.drawImage(image, 0, backBuffer.getY(row), null);
+                backBuffer.set(row, renderCache.getVersion(row));
+            }
+        }
+        bufferGraphics.dispose();
+        renderCache.trim(startRow, startRow + bands);
 
-        graphics2D.setPaint(Color.WHITE);
-        graphics2D.fillPolygon(createScaledPolygon(-1, startRow, startColumn, startRow + 1));
-        graphics2D.fillPolygon(createScaledPolygon(endColumn, endRow, Integer.MAX_VALUE, endRow + 1));
+        backBuffer.show(graphics2D, startRow, startY);
+        if (backBuffer.isLost()) {
+            repaint();
+        }
     }
 
-    private void drawText(Graphics2D graphics2D) {
+    // background of the band of row and text of the row and its neighbours, which can cross the band
+    private void drawRow(Graphics2D graphics2D, Viewport viewport, int row, int selectionStart, int selectionEnd) {
+        graphics2D.setPaint(theme.getBackground());
+        graphics2D.fillRect(0, 0, getWidth(), lineSpacing);
+        if (selectionStart < selectionEnd) {
+            graphics2D.setPaint(theme.getSelection());
+            graphics2D.fillRect(selectionStart, 0, selectionEnd - selectionStart, lineSpacing);
+        }
 
-        StringBuilder data = doc.getAllDataInString();
-        TIntArrayList length = doc.getAllLinesLength();
-        Words dataInWords = doc.getAllDataInWords();
+        int y = metrics.getAscent();
+        for (int i = Math.max(row - 1, 0); i <= row + 1 && i < viewport.getLineCount(); i++) {
+            drawText(graphics2D, viewport, i, y + (i - row) * lineSpacing);
+        }
+    }
 
-        graphics2D.setPaint(Color.BLACK);
+    private void drawText(Graphics2D graphics2D, Viewport viewport, int row, int y) {
+        Viewport.Row line = viewport.getRow(row);
+        int scrollX = viewport.getWidthOffset() * charWidth;
 
-        int startDrawingRow = doc.getHeightOffset() > 0 ? -1 : 0;
-        int y = startDrawingRow * lineSpacing;
-        boolean isText = doc.isFileTypeText();
+        // only visible part of the line is drawn
+        int visibleLength = Math.min(line.length(), metrics.getColumn(line, scrollX + getWidth()) + 1);
 
-        int pos = 0;
-        for (int j = 0; j < doc.getHeightOffset() + startDrawingRow; j++) {
-            pos += length.get(j) + 1;
+        if (viewport.isFileTypeText()) {
+            graphics2D.setPaint(theme.getText());
+            graphics2D.drawChars(line.getChars(), 0, visibleLength, -scrollX, y);
+            return;
         }
 
-        for (int i = doc.getHeightOffset() + startDrawingRow; i < length.size() && y < getHeight(); i++) {
-            y += lineSpacing;
-            int x = -doc.getWidthOffset() * charWidth;
-            if (!isText) {
-                for (int j = 0; j < dataInWords.rowSize(i); j++) {
-                    Word word = dataInWords.get(i, j);
-                    if (x > getWidth()) {
-                        break;
-                    }
-                    switch (word.type) {
-                        case Key:
-                            graphics2D.setPaint(Color.BLUE);
-                            break;
-                        case Identifier:
-                            graphics2D.setPaint(Color.GRAY);
-                            break;
-                        case Comment:
-                            graphics2D.setPaint(Color.MAGENTA);
-                            break;
-                        case Bracket:
-                            graphics2D.setPaint(Color.BLACK);
-                            break;
-                        case BracketLight:
-                            graphics2D.setPaint(Color.RED);
-                            break;
-                        case Other:
-                            graphics2D.setPaint(Color.BLACK);
-                            break;
-                        default:
-                            graphics2D.setPaint(Color.BLACK);
-                            break;
-                    }
-                    graphics2D.drawString(data.substring(pos + word.start, pos + word.end), x, y);
-
-                    x += word.length() * charWidth;
-                }
-                pos += length.get(i) + 1;
-            } else {
-                graphics2D.drawString(data.substring(pos, Math.min(pos + length.get(i), data.length())), x, y);
-
-                pos += length.get(i) + 1;
+        // words of the same color are drawn by one call
+        int runStart = 0;
+        int runEnd = 0;
+        Color runColor = null;
+        for (int j = 0; j < line.wordCount() && runEnd < visibleLength; j++) {
+            int start = line.startAt(j);
+            Color color = theme.getColor(line.typeAt(j));
+            if (color != runColor) {
+                drawRun(graphics2D, line, scrollX, runStart, runEnd, runColor, y);
+                runStart = start;
+                runColor = color;
             }
+            runEnd = Math.min(line.endAt(j), visibleLength);
+        }
+        drawRun(graphics2D, line, scrollX, runStart, runEnd, runColor, y);
+    }
+
+    private void drawRun(Graphics2D graphics2D, Viewport.Row line, int scrollX, int start, int end, Color color, int y) {
+        if (color != null && start < end) {
+            graphics2D.setPaint(color);
+            graphics2D.drawChars(line.getChars(), start, end - start, metrics.getX(line, start) - scrollX, y);
         }
     }
 
-    private void drawCaret(Graphics2D graphics2D) {
-        graphics2D.setPaint(Color.BLACK);
-        int x = scaleFromColumnToXPixel(doc.getCaretColumn());
-        int y = scaleFromRowToYPixel(doc.getCaretRow());
-        graphics2D.drawLine(x, y, x, y + lineSpacing);
+    private void drawCaret(Graphics2D graphics2D, Viewport viewport) {
+        graphics2D.setPaint(theme.getCaret());
+        int x = scaleFromColumnToXPixel(viewport, viewport.getCaretRow(), viewport.getCaretColumn());
+        int y = scaleFromRowToYPixel(viewport, viewport.getCaretRow());
+        graphics2D.drawLine(x, y, x, y + lineSpacing - 1);
     }
 }
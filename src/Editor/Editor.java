@@ -7,12 +7,16 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class Editor extends JFrame{
 
     private final ETextArea area;
+    private final JMenuItem saveItem;
     private final int startWindowSize = 600;
+    private final long mappedFileSize = 8 << 20;
+    private SwingWorker<?, ?> loader;
 
     private Editor() throws HeadlessException {
         super("Editor");
@@ -32,7 +36,7 @@ public class Editor extends JFrame{
         JMenuItem openItem = new JMenuItem("Open");
         fileMenu.add(openItem);
         openItem.addActionListener(new openFile());
-        JMenuItem saveItem = new JMenuItem("Save as");
+        saveItem = new JMenuItem("Save as");
         saveItem.addActionListener(new saveFile());
         fileMenu.add(saveItem);
 
@@ -58,15 +62,64 @@ public class Editor extends JFrame{
 
             if (ret == JFileChooser.APPROVE_OPTION) {
                 File file = fileChooser.getSelectedFile();
-                try {
-                    area.setNewDocument(Files.readAllLines(file.toPath()));
-                    area.setFileName(file.getName(), true);
-                } catch (IOException exception) {
-                    System.out.println("Problem with opening file");
-                    exception.printStackTrace();
+                if (loader != null) {
+                    loader.cancel(true);
+                }
+
+                if (file.length() >= mappedFileSize) {
+                    openMappedFile(file);
+                } else {
+                    openSmallFile(file);
                 }
             }
         }
+
+        private void openSmallFile(File file) {
+            loader = new SwingWorker<List<String>, Void>() {
+                @Override
+                protected List<String> doInBackground() throws IOException {
+                    return Files.readAllLines(file.toPath());
+                }
+
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    try {
+                        area.setNewDocument(get());
+                        area.setFileName(file.getName(), true);
+                    } catch (InterruptedException | ExecutionException exception) {
+                        System.out.println("Problem with opening file");
+                        exception.printStackTrace();
+                    }
+                }
+            };
+            loader.execute();
+        }
+
+        // big file isn't read to memory, it is shown while lines are indexed in background
+        private void openMappedFile(File file) {
+            DocumentLoader documentLoader = new DocumentLoader(area, file);
+            ProgressMonitor progressMonitor = new ProgressMonitor(Editor.this, "Opening " + file.getName(), null, 0, 100);
+            saveItem.setEnabled(false);
+
+            documentLoader.addPropertyChangeListener(event -> {
+                if (documentLoader.isDone()) {
+                    progressMonitor.close();
+                    saveItem.setEnabled(true);
+                } else if (progressMonitor.isCanceled()) {
+                    documentLoader.cancel(true);
+                    area.setNewDocument(null);
+                } else if (event.getPropertyName().equals("progress")) {
+                    progressMonitor.setProgress((Integer) event.getNewValue());
+                }
+            });
+
+            loader = documentLoader;
+            loader.execute();
+        }
     }
 
     private class saveFile implements ActionListener {
@@ -76,17 +129,41 @@ public class Editor extends JFrame{
 
             if (ret == JFileChooser.APPROVE_OPTION) {
                 File file = fileChooser.getSelectedFile();
-                try {
-                    if (!file.exists()) {
-                        file.createNewFile();
+                TextStorage text = area.getTextSnapshot();
+                ProgressMonitor progressMonitor = new ProgressMonitor(Editor.this, "Saving " + file.getName(), null, 0, 100);
+
+                SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+                    @Override
+                    protected Void doInBackground() throws IOException {
+                        DocumentSaver.save(text, file.toPath(), this::setProgress);
+                        return null;
                     }
 
-                    Files.write(file.toPath(), area.getLines(), StandardOpenOption.WRITE);
-                    area.setFileName(file.getName(), false);
-                } catch (IOException exception) {
-                    System.out.println("Problem with saving file");
-                    exception.printStackTrace();
-                }
+                    @Override
+                    protected void done() {
+                        progressMonitor.close();
+                        if (isCancelled()) {
+                            return;
+                        }
+
+                        try {
+                            get();
+                            area.setFileName(file.getName(), false);
+                        } catch (InterruptedException | ExecutionException exception) {
+                            System.out.println("Problem with saving file");
+                            exception.printStackTrace();
+                        }
+                    }
+                };
+
+                worker.addPropertyChangeListener(event -> {
+                    if (progressMonitor.isCanceled()) {
+                        worker.cancel(true);
+                    } else if (event.getPropertyName().equals("progress")) {
+                        progressMonitor.setProgress((Integer) event.getNewValue());
+                    }
+                });
+                worker.execute();
             }
         }
     }
@@ -1,11 +1,10 @@
 package Editor;
 
 import java.util.Arrays;
-import java.util.HashSet;
 
 class KeyWords {
 
-    private static final String[] jsKeyWords = {
+    static final String[] jsKeyWords = {
             "abstract",
             "boolean",
             "break",
@@ -67,7 +66,7 @@ class KeyWords {
             "with"
     };
 
-    private static final String[] javaKeyWords = {
+    static final String[] javaKeyWords = {
             "abstract",
             "continue",
             "for",
@@ -119,15 +118,76 @@ class KeyWords {
             "super",
             "while"};
 
+    static final KeyWords JAVA = new KeyWords(javaKeyWords);
+    static final KeyWords JS = new KeyWords(jsKeyWords);
 
-    private static final HashSet<String> javaSet = new HashSet<>(Arrays.asList(javaKeyWords));
-    private static final HashSet<String> jsSet = new HashSet<>(Arrays.asList(jsKeyWords));
+    private static final int LETTERS = 'z' - 'a' + 1;
 
-    public static boolean isJavaKey(String s) {
-        return javaSet.contains(s);
+    // trie of key words: child of node by letter c is next[node * LETTERS + c - 'a'], 0 if there is no child
+    private final int[] next;
+    private final boolean[] isWordEnd;
+    private final int maxLength;
+
+    private KeyWords(String[] words) {
+        int nodes = 1;
+        int maxLength = 0;
+        for (String word : words) {
+            nodes += word.length();
+            maxLength = Math.max(maxLength, word.length());
+        }
+        this.maxLength = maxLength;
+
+        int[] next = new int[nodes * LETTERS];
+        boolean[] isWordEnd = new boolean[nodes];
+        int size = 1;
+        for (String word : words) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int c = word.charAt(i) - 'a';
+                if (c < 0 || c >= LETTERS) {
+                    throw new IllegalArgumentException("Key word must contain only letters a-z: " + word);
+                }
+                if (next[node * LETTERS + c] == 0) {
+                    next[node * LETTERS + c] = size++;
+                }
+                node = next[node * LETTERS + c];
+            }
+            isWordEnd[node] = true;
+        }
+
+        this.next = Arrays.copyOf(next, size * LETTERS);
+        this.isWordEnd = Arrays.copyOf(isWordEnd, size);
     }
 
-    public static boolean isJSKey(String s) {
-        return jsSet.contains(s);
+    // key words of the file type, null for text
+    public static KeyWords of(FileType fileType) {
+        switch (fileType) {
+            case Java:
+                return JAVA;
+            case JS:
+                return JS;
+            default:
+                return null;
+        }
+    }
+
+    // s[start, end) is key word, nothing is allocated
+    public boolean isKey(CharSequence s, int start, int end) {
+        if (end - start > maxLength) {
+            return false;
+        }
+
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            int c = s.charAt(i) - 'a';
+            if (c < 0 || c >= LETTERS) {
+                return false;
+            }
+            node = next[node * LETTERS + c];
+            if (node == 0) {
+                return false;
+            }
+        }
+        return isWordEnd[node];
     }
 }
@@ -0,0 +1,57 @@
+package Editor;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+// Compares KeyWords trie with lookup of substring in HashSet, which was used before.
+// Run: java Editor.KeyWordsBenchmark
+class KeyWordsBenchmark {
+
+    private static final int WORDS = 1 << 20;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        String[] identifiers = {"i", "size", "length", "getValue", "result", "data", "String", "doc", "pos", "row"};
+        Random rand = new Random(0);
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[WORDS];
+        int[] ends = new int[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            String word = rand.nextInt(3) == 0 ? KeyWords.javaKeyWords[rand.nextInt(KeyWords.javaKeyWords.length)] :
+                    identifiers[rand.nextInt(identifiers.length)];
+            starts[i] = text.length();
+            text.append(word);
+            ends[i] = text.length();
+            text.append(' ');
+        }
+        String s = text.toString();
+        HashSet<String> set = new HashSet<>(Arrays.asList(KeyWords.javaKeyWords));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long time = System.nanoTime();
+            int keys = 0;
+            for (int i = 0; i < WORDS; i++) {
+                if (set.contains(s.substring(starts[i], ends[i]))) {
+                    keys++;
+                }
+            }
+            long hashSetTime = System.nanoTime() - time;
+
+            time = System.nanoTime();
+            int trieKeys = 0;
+            for (int i = 0; i < WORDS; i++) {
+                if (KeyWords.JAVA.isKey(s, starts[i], ends[i])) {
+                    trieKeys++;
+                }
+            }
+            long trieTime = System.nanoTime() - time;
+
+            if (keys != trieKeys) {
+                throw new IllegalStateException("Different results: " + keys + " " + trieKeys);
+            }
+            System.out.println(String.format("HashSet: %.1f ns/word, trie: %.1f ns/word",
+                    (double) hashSetTime / WORDS, (double) trieTime / WORDS));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package Editor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+public class KeyWordsTest extends Assert {
+
+    private final int countOfRandomTests = 100000;
+    private Random rand;
+
+    @Before
+    public void init() {
+        rand = new Random();
+    }
+
+    @Test
+    public void testAllKeyWordsAreFound() {
+        for (String word : KeyWords.javaKeyWords) {
+            assertTrue(KeyWords.JAVA.isKey(word, 0, word.length()));
+        }
+        for (String word : KeyWords.jsKeyWords) {
+            assertTrue(KeyWords.JS.isKey(word, 0, word.length()));
+        }
+    }
+
+    @Test
+    public void testInRange() {
+        String s = "(int)classes;";
+        assertTrue(KeyWords.JAVA.isKey(s, 1, 4));
+        assertTrue(KeyWords.JAVA.isKey(s, 5, 10));
+        assertFalse(KeyWords.JAVA.isKey(s, 5, 12));
+        assertFalse(KeyWords.JAVA.isKey(s, 1, 3));
+        assertFalse(KeyWords.JAVA.isKey(s, 1, 1));
+        assertFalse(KeyWords.JS.isKey("function", 0, 7));
+        assertTrue(KeyWords.JS.isKey("function", 0, 8));
+        assertFalse(KeyWords.JAVA.isKey("function", 0, 8));
+    }
+
+    @Test
+    public void testEqualsHashSetRandom() {
+        HashSet<String> java = new HashSet<>(Arrays.asList(KeyWords.javaKeyWords));
+        HashSet<String> js = new HashSet<>(Arrays.asList(KeyWords.jsKeyWords));
+        String letters = "abcdefghilnorstuvwAZ_$1";
+        for (int i = 0; i < countOfRandomTests; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = rand.nextInt(12); j >= 0; j--) {
+                sb.append(letters.charAt(rand.nextInt(letters.length())));
+            }
+            // random word, key word or prefix of key word with random suffix
+            String keyWord = KeyWords.jsKeyWords[rand.nextInt(KeyWords.jsKeyWords.length)];
+            String s = i % 3 == 0 ? sb.toString() : i % 3 == 1 ? keyWord :
+                    keyWord.substring(0, rand.nextInt(keyWord.length())) + sb;
+            assertEquals(java.contains(s), KeyWords.JAVA.isKey(s, 0, s.length()));
+            assertEquals(js.contains(s), KeyWords.JS.isKey(s, 0, s.length()));
+        }
+    }
+}
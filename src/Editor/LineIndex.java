@@ -0,0 +1,398 @@
+package Editor;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.ArrayList;
+
+// Lengths of lines (without '\n') split into blocks,
+// Fenwick trees over blocks keep count of rows and chars before every block.
+// Every line is followed by separator chars: 1 for '\n' in text, 0 if the index is used for plain counts.
+// row -> offset, offset -> row, get, set are O(log n + MAX_BLOCK).
+// Count of blocks is changed only by rebuild of trees, so insert and remove of lines only update trees:
+// blocks emptied by remove or merge are kept and used by the next split of a neighbour.
+// Trees are rebuilt in O(n / MAX_BLOCK) when a block is split and has no empty neighbour, at most once
+// per MAX_BLOCK / 2 inserted lines, and when half of blocks are empty
+class LineIndex {
+
+    private static final int MAX_BLOCK = 128;
+    private static final int MIN_BLOCK = MAX_BLOCK / 8;
+
+    private final ArrayList<TIntArrayList> blocks;
+    private final int separator;
+    private final TIntArrayList blockChars; // sum of (length + separator) in block
+    private int[] rowsTree;
+    private int[] charsTree;
+    private int size;
+    private int emptyBlocks; // left by removes, they are removed by rebuild
+
+    // last found block
+    private int lastBlock;
+    private int lastBlockRow;
+    private int lastBlockOffset;
+
+    LineIndex() {
+        this(1);
+    }
+
+    LineIndex(int separator) {
+        if (separator < 0) {
+            throw new IllegalArgumentException("Separator: " + separator);
+        }
+
+        this.separator = separator;
+        blocks = new ArrayList<>();
+        blockChars = new TIntArrayList();
+        rowsTree = new int[1];
+        charsTree = new int[1];
+        size = 0;
+        lastBlock = -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int row) {
+        checkRow(row);
+        int block = findBlockByRow(row);
+        return blocks.get(block).get(row - lastBlockRow);
+    }
+
+    public void set(int row, int len) {
+        checkRow(row);
+        int block = findBlockByRow(row);
+        TIntArrayList lines = blocks.get(block);
+        int diff = len - lines.get(row - lastBlockRow);
+        if (diff != 0) {
+            lines.set(row - lastBlockRow, len);
+            blockChars.set(block, blockChars.get(block) + diff);
+            update(charsTree, block, diff);
+            lastBlock = -1;
+        }
+    }
+
+    public void add(int len) {
+        insert(size, len);
+    }
+
+    public void insert(int row, int len) {
+        insert(row, new int[] {len});
+    }
+
+    public void insert(int row, int[] len) {
+        if (row < 0 || row > size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        }
+        if (len.length == 0) {
+            return;
+        }
+
+        int block;
+        int inBlock;
+        boolean rebuild = false;
+        if (blocks.isEmpty()) {
+            blocks.add(new TIntArrayList());
+            blockChars.add(0);
+            block = 0;
+            inBlock = 0;
+            rebuild = true;
+        } else if (row == size) {
+            block = blocks.size() - 1;
+            inBlock = blocks.get(block).size();
+        } else {
+            block = findBlockByRow(row);
+            inBlock = row - lastBlockRow;
+        }
+
+        int chars = len.length * separator;
+        for (int aLen : len) {
+            chars += aLen;
+        }
+
+        TIntArrayList lines = blocks.get(block);
+        if (lines.isEmpty() && !rebuild) {
+            emptyBlocks--;
+        }
+        lines.insert(inBlock, len);
+        blockChars.set(block, blockChars.get(block) + chars);
+        size += len.length;
+        lastBlock = -1;
+
+        if (rebuild) {
+            if (lines.size() > MAX_BLOCK) {
+                splitBlock(block);
+            }
+            rebuild();
+            return;
+        }
+        update(rowsTree, block, len.length);
+        update(charsTree, block, chars);
+
+        if (lines.size() > MAX_BLOCK && !splitToEmptyBlock(block)) {
+            splitBlock(block);
+            rebuild();
+        }
+    }
+
+    public void remove(int row, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (row < 0 || count < 0 || row + count > size) {
+            throw new IndexOutOfBoundsException("Rows: [" + row + ", " + (row + count) + "), size: " + size);
+        }
+
+        int block = findBlockByRow(row);
+        int inBlock = row - lastBlockRow;
+        int startBlock = block;
+        size -= count;
+        lastBlock = -1;
+
+        // emptied blocks are kept, so the trees are only updated
+        while (count > 0) {
+            TIntArrayList lines = blocks.get(block);
+            int n = Math.min(count, lines.size() - inBlock);
+            if (n > 0) {
+                int chars = removeFromBlock(block, inBlock, n);
+                update(rowsTree, block, -n);
+                update(charsTree, block, -chars);
+                count -= n;
+                if (lines.isEmpty()) {
+                    emptyBlocks++;
+                }
+            }
+            block++;
+            inBlock = 0;
+        }
+
+        mergeSmallBlock(startBlock);
+        if (block - 1 != startBlock) {
+            mergeSmallBlock(block - 1);
+        }
+        if (emptyBlocks > blocks.size() / 2) {
+            rebuild();
+        }
+    }
+
+    public void clear() {
+        blocks.clear();
+        blockChars.clear();
+        size = 0;
+        emptyBlocks = 0;
+        rebuild();
+    }
+
+    // offset of the first char of row, row == size gives length of text + separator
+    public int getLineStart(int row) {
+        if (row == size) {
+            return prefix(charsTree, blocks.size());
+        }
+
+        checkRow(row);
+        int block = findBlockByRow(row);
+        TIntArrayList lines = blocks.get(block);
+        int res = lastBlockOffset;
+        for (int i = 0; i < row - lastBlockRow; i++) {
+            res += lines.get(i) + separator;
+        }
+        return res;
+    }
+
+    // row containing offset, '\n' belongs to the line before it
+    public int getRow(int offset) {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Index is empty");
+        }
+
+        int block = 0;
+        int row = 0;
+        int rem = Math.max(offset, 0);
+        for (int step = Integer.highestOneBit(blocks.size()); step > 0; step >>= 1) {
+            if (block + step <= blocks.size() && charsTree[block + step] <= rem) {
+                block += step;
+                rem -= charsTree[block];
+                row += rowsTree[block];
+            }
+        }
+
+        if (block == blocks.size()) {
+            return size - 1;
+        }
+
+        TIntArrayList lines = blocks.get(block);
+        int i = 0;
+        while (i < lines.size() - 1 && rem >= lines.get(i) + separator) {
+            rem -= lines.get(i) + separator;
+            i++;
+        }
+        return row + i;
+    }
+
+    private int findBlockByRow(int row) {
+        if (lastBlock >= 0 && row >= lastBlockRow && row < lastBlockRow + blocks.get(lastBlock).size()) {
+            return lastBlock;
+        }
+
+        int block = 0;
+        int rows = 0;
+        int offset = 0;
+        for (int step = Integer.highestOneBit(blocks.size()); step > 0; step >>= 1) {
+            if (block + step <= blocks.size() && rows + rowsTree[block + step] <= row) {
+                block += step;
+                rows += rowsTree[block];
+                offset += charsTree[block];
+            }
+        }
+
+        lastBlock = block;
+        lastBlockRow = rows;
+        lastBlockOffset = offset;
+        return block;
+    }
+
+    private int removeFromBlock(int block, int inBlock, int count) {
+        TIntArrayList lines = blocks.get(block);
+        int chars = count * separator;
+        for (int i = inBlock; i < inBlock + count; i++) {
+            chars += lines.get(i);
+        }
+        lines.remove(inBlock, count);
+        blockChars.set(block, blockChars.get(block) - chars);
+        return chars;
+    }
+
+    // the block is split into blocks of MAX_BLOCK / 2 lines, count of blocks is changed, trees must be rebuilt
+    private void splitBlock(int block) {
+        TIntArrayList lines = blocks.get(block);
+        int count = (lines.size() + MAX_BLOCK / 2 - 1) / (MAX_BLOCK / 2);
+        ArrayList<TIntArrayList> newBlocks = new ArrayList<>(count);
+        TIntArrayList newChars = new TIntArrayList(count);
+        for (int i = 0; i < count; i++) {
+            int from = (int) ((long) lines.size() * i / count);
+            int to = (int) ((long) lines.size() * (i + 1) / count);
+            TIntArrayList newLines = new TIntArrayList(to - from);
+            int chars = (to - from) * separator;
+            for (int j = from; j < to; j++) {
+                newLines.add(lines.get(j));
+                chars += lines.get(j);
+            }
+            newBlocks.add(newLines);
+            newChars.add(chars);
+        }
+
+        blocks.remove(block);
+        blocks.addAll(block, newBlocks);
+        blockChars.removeAt(block);
+        blockChars.insert(block, newChars.toArray());
+    }
+
+    // half of lines of the block is moved to an empty neighbour, if there is one and the rest fits
+    private boolean splitToEmptyBlock(int block) {
+        TIntArrayList lines = blocks.get(block);
+        int half = lines.size() / 2;
+        if (lines.size() - half > MAX_BLOCK) {
+            return false;
+        }
+
+        if (block + 1 < blocks.size() && blocks.get(block + 1).isEmpty()) {
+            moveLines(block, lines.size() - half, half, block + 1);
+        } else if (block > 0 && blocks.get(block - 1).isEmpty()) {
+            moveLines(block, 0, half, block - 1);
+        } else {
+            return false;
+        }
+        emptyBlocks--;
+        return true;
+    }
+
+    // small block is moved to a not empty neighbour, if they fit in one block
+    private void mergeSmallBlock(int block) {
+        TIntArrayList lines = blocks.get(block);
+        if (lines.isEmpty() || lines.size() >= MIN_BLOCK) {
+            return;
+        }
+
+        if (block + 1 < blocks.size() && isMergeable(lines, blocks.get(block + 1))) {
+            moveLines(block, 0, lines.size(), block + 1);
+        } else if (block > 0 && isMergeable(lines, blocks.get(block - 1))) {
+            moveLines(block, 0, lines.size(), block - 1);
+        } else {
+            return;
+        }
+        emptyBlocks++;
+    }
+
+    private static boolean isMergeable(TIntArrayList lines, TIntArrayList neighbour) {
+        return !neighbour.isEmpty() && lines.size() + neighbour.size() <= MAX_BLOCK;
+    }
+
+    // lines [from, from + count) of block are moved to the adjacent block dst: to its start if it is the next one,
+    // else to its end. They must be at the same side of block
+    private void moveLines(int block, int from, int count, int dst) {
+        TIntArrayList lines = blocks.get(block);
+        TIntArrayList dstLines = blocks.get(dst);
+        dstLines.insert(dst > block ? 0 : dstLines.size(), lines.toArray(from, count));
+        int chars = removeFromBlock(block, from, count);
+        blockChars.set(dst, blockChars.get(dst) + chars);
+
+        update(rowsTree, block, -count);
+        update(charsTree, block, -chars);
+        update(rowsTree, dst, count);
+        update(charsTree, dst, chars);
+        lastBlock = -1;
+    }
+
+    // Fenwick trees, block i is stored at index i + 1
+
+    // empty blocks are removed
+    private void rebuild() {
+        if (emptyBlocks > 0) {
+            int count = 0;
+            for (int i = 0; i < blocks.size(); i++) {
+                if (!blocks.get(i).isEmpty()) {
+                    blocks.set(count, blocks.get(i));
+                    blockChars.set(count, blockChars.get(i));
+                    count++;
+                }
+            }
+            blocks.subList(count, blocks.size()).clear();
+            blockChars.remove(count, blockChars.size() - count);
+            emptyBlocks = 0;
+        }
+
+        int n = blocks.size();
+        rowsTree = new int[n + 1];
+        charsTree = new int[n + 1];
+        for (int i = 1; i <= n; i++) {
+            rowsTree[i] += blocks.get(i - 1).size();
+            charsTree[i] += blockChars.get(i - 1);
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                rowsTree[parent] += rowsTree[i];
+                charsTree[parent] += charsTree[i];
+            }
+        }
+        lastBlock = -1;
+    }
+
+    private void update(int[] tree, int block, int diff) {
+        for (int i = block + 1; i < tree.length; i += i & -i) {
+            tree[i] += diff;
+        }
+    }
+
+    // sum over first n blocks
+    private int prefix(int[] tree, int n) {
+        int res = 0;
+        for (int i = n; i > 0; i -= i & -i) {
+            res += tree[i];
+        }
+        return res;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        }
+    }
+}
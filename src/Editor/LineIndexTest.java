@@ -0,0 +1,159 @@
+package Editor;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LineIndexTest extends Assert {
+
+    private final static int countOfRandomOperations = 20000;
+    private final static int maxLineLength = 100;
+    private final static int maxCountOfInsertedLines = 300;
+    private static final Random rand = new Random();
+
+    private static void assertIndexEquals(TIntArrayList expected, LineIndex index) {
+        assertEquals(expected.size(), index.size());
+
+        int pos = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), index.get(i));
+            assertEquals(pos, index.getLineStart(i));
+            assertEquals(i, index.getRow(pos));
+            assertEquals(i, index.getRow(pos + expected.get(i)));
+            pos += expected.get(i) + 1;
+        }
+        assertEquals(pos, index.getLineStart(expected.size()));
+    }
+
+    private static int[] randomLines(int count) {
+        int[] res = new int[count];
+        for (int i = 0; i < count; i++) {
+            res[i] = rand.nextInt(maxLineLength);
+        }
+        return res;
+    }
+
+    @Test
+    public void testVoidIndex() {
+        LineIndex index = new LineIndex();
+        assertEquals(0, index.size());
+        assertEquals(0, index.getLineStart(0));
+
+        index.add(5);
+        index.remove(0, 1);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testBigInsertAndRemove() {
+        TIntArrayList expected = new TIntArrayList(randomLines(10000));
+        LineIndex index = new LineIndex();
+        index.insert(0, expected.toArray());
+        assertIndexEquals(expected, index);
+
+        expected.remove(10, 9000);
+        index.remove(10, 9000);
+        assertIndexEquals(expected, index);
+    }
+
+    @Test
+    public void testWithoutSeparator() {
+        TIntArrayList expected = new TIntArrayList(randomLines(1000));
+        LineIndex index = new LineIndex(0);
+        index.insert(0, expected.toArray());
+        expected.remove(100, 500);
+        index.remove(100, 500);
+        expected.set(7, 3);
+        index.set(7, 3);
+
+        int pos = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(pos, index.getLineStart(i));
+            pos += expected.get(i);
+        }
+        assertEquals(pos, index.getLineStart(expected.size()));
+    }
+
+    @Test
+    public void testRandomOperations() {
+        TIntArrayList expected = new TIntArrayList();
+        LineIndex index = new LineIndex();
+
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            int row = rand.nextInt(expected.size() + 1);
+            switch (rand.nextInt(4)) {
+                case 0:
+                    int[] lines = randomLines(rand.nextInt(maxCountOfInsertedLines) + 1);
+                    expected.insert(row, lines);
+                    index.insert(row, lines);
+                    break;
+                case 1:
+                    int count = Math.min(expected.size() - row, rand.nextInt(maxCountOfInsertedLines));
+                    expected.remove(row, count);
+                    index.remove(row, count);
+                    break;
+                case 2:
+                    if (row < expected.size()) {
+                        int len = rand.nextInt(maxLineLength);
+                        expected.set(row, len);
+                        index.set(row, len);
+                    }
+                    break;
+                case 3:
+                    if (row < expected.size()) {
+                        assertEquals(expected.get(row), index.get(row));
+                    }
+                    break;
+            }
+
+            if (i % 1000 == 0) {
+                assertIndexEquals(expected, index);
+            }
+        }
+
+        assertIndexEquals(expected, index);
+    }
+
+    @Test
+    public void testMillionLinesInsertedAtOnce() {
+        LineIndex index = new LineIndex();
+        index.insert(0, new int[1 << 20]);
+        index.insert(1 << 19, 5);
+        assertEquals((1 << 20) + 1, index.size());
+        assertEquals(5, index.get(1 << 19));
+        assertEquals((1 << 20) + 6, index.getLineStart((1 << 20) + 1));
+        assertEquals(1 << 19, index.getRow((1 << 19) + 3));
+    }
+
+    @Test
+    public void testLinesInsertedAndRemovedOneByOne() {
+        TIntArrayList expected = new TIntArrayList(randomLines(2000));
+        LineIndex index = new LineIndex();
+        index.insert(0, expected.toArray());
+
+        int row = rand.nextInt(expected.size());
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            if (rand.nextInt(200) == 0) {
+                row = rand.nextInt(expected.size());
+            }
+            // blocks are split and emptied at the same place
+            if (i / 1000 % 2 == 0 || expected.size() < 2) {
+                int len = rand.nextInt(maxLineLength);
+                expected.insert(row, len);
+                index.insert(row, len);
+            } else {
+                row = Math.min(row, expected.size() - 1);
+                expected.removeAt(row);
+                index.remove(row, 1);
+            }
+
+            if (i % 100 == 0) {
+                assertIndexEquals(expected, index);
+            }
+        }
+
+        assertIndexEquals(expected, index);
+    }
+}
@@ -3,18 +3,37 @@ package Editor;
 import Editor.Word.Type;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
 
 class LineParser {
 
-    private static final Character[] specialChars = {'{', '}', '[', ']', '(', ')', '/'};
-    private static final HashSet<Character> charType = new HashSet<>(Arrays.asList(specialChars));
+    // classes of ASCII chars, other chars are classified by Character methods
+    private static final byte OTHER = 0;
+    private static final byte SPECIAL = 1; // brackets and '/'
+    private static final byte IDENTIFIER_PART = 2;
+    private static final byte IDENTIFIER_START = 3;
+    private static final byte[] charClass = new byte[128];
 
-    private final String inputStringToParse;
+    static {
+        for (char ch = 0; ch < charClass.length; ch++) {
+            if (Character.isJavaIdentifierStart(ch)) {
+                charClass[ch] = IDENTIFIER_START;
+            } else if (Character.isJavaIdentifierPart(ch)) {
+                charClass[ch] = IDENTIFIER_PART;
+            } else {
+                charClass[ch] = OTHER;
+            }
+        }
+        for (char ch : new char[]{'{', '}', '[', ']', '(', ')', '/'}) {
+            charClass[ch] = SPECIAL;
+        }
+    }
+
+    private final KeyWords keyWords; // null for text
     private final ArrayList<Word> output;
-    private final FileType fileType;
-    private final Words dataInWords;
+    private final WordsArrayList words;
+    private CharSequence text;
+    private int lineStart;
+    private int lineEnd;
     private int size;
     private boolean isCommentContinuous;
     private int pos;
@@ -22,22 +41,44 @@ class LineParser {
     private Type state;
 
     LineParser(String inputStringToParse, FileType fileType, Words words, ArrayList<Word> res, int row) {
-        dataInWords = words;
-        this.inputStringToParse = inputStringToParse;
-        this.isCommentContinuous = dataInWords.isCommentContinuous(row);
-        this.fileType = fileType;
+        this(inputStringToParse, fileType, words.isCommentContinuous(row), res);
+    }
+
+    LineParser(String inputStringToParse, FileType fileType, boolean isCommentContinuous, ArrayList<Word> res) {
+        keyWords = KeyWords.of(fileType);
         output = res;
-        size = 0;
+        words = null;
+        text = inputStringToParse;
+        lineStart = 0;
+        lineEnd = inputStringToParse.length();
+        this.isCommentContinuous = isCommentContinuous;
+    }
+
+    // Parser for many lines, words are added to the end of words list without allocations
+    LineParser(FileType fileType, WordsArrayList words) {
+        keyWords = KeyWords.of(fileType);
+        output = null;
+        this.words = words;
+    }
+
+    // line is text[start, end), positions of words are counted from start
+    public void parseLine(CharSequence text, int start, int end, boolean isCommentContinuous) {
+        this.text = text;
+        lineStart = start;
+        lineEnd = end;
+        this.isCommentContinuous = isCommentContinuous;
+        parseLine();
     }
 
     public void parseLine() {
 
         state = isCommentContinuous ? Type.Comment : Type.Other;
-        pos = 0;
-        startWord = 0;
+        pos = lineStart;
+        startWord = lineStart;
+        size = 0;
 
-        while (pos < inputStringToParse.length()) {
-            char ch = inputStringToParse.charAt(pos);
+        while (pos < lineEnd) {
+            char ch = text.charAt(pos);
             switch (state) {
                 case Comment:
                     if (ch == '*' && isNextSlash(pos)) {
@@ -51,7 +92,7 @@ class LineParser {
                     }
                     break;
                 case Identifier:
-                    if (Character.isJavaIdentifierPart(ch)) {
+                    if (isIdentifierPart(ch)) {
                         pos++;
                     } else {
                         if (pos - startWord > 0) {
@@ -83,7 +124,7 @@ class LineParser {
         }
 
         if (startWord < pos) {
-            addWord(startWord, inputStringToParse.length(), state);
+            addWord(startWord, lineEnd, state);
         }
     }
 
@@ -93,23 +134,24 @@ class LineParser {
         }
         Type resType = type;
         if (resType == Type.Identifier) {
-            String s = inputStringToParse.substring(start, end);
-
-            if (fileType == FileType.Java) {
-                resType = KeyWords.isJavaKey(s) ? Type.Key : Type.Identifier;
-            } else if (fileType == FileType.JS) {
-                resType = KeyWords.isJSKey(s) ? Type.Key : Type.Identifier;
+            if (keyWords != null) {
+                resType = keyWords.isKey(text, start, end) ? Type.Key : Type.Identifier;
             } else {
                 resType = Type.Other;
             }
         }
 
         size++;
-        output.add(new Word(start, end, resType));
+        if (words != null) {
+            words.add(start - lineStart, end - lineStart, resType);
+        } else {
+            output.add(new Word(start - lineStart, end - lineStart, resType));
+        }
     }
 
     private void updateState(char ch) {
-        if (charType.contains(ch)) {
+        byte chClass = ch < charClass.length ? charClass[ch] : OTHER;
+        if (chClass == SPECIAL) {
             if (ch == '/') {
                 if (isNextStar(pos)) {
                     pos++;
@@ -118,8 +160,8 @@ class LineParser {
                     isCommentContinuous = true;
                 } else if (isNextSlash(pos)) {
                     addWord(startWord, pos, state);
-                    addWord(pos, inputStringToParse.length(), Type.Comment);
-                    pos = inputStringToParse.length();
+                    addWord(pos, lineEnd, Type.Comment);
+                    pos = lineEnd;
                     startWord = pos;
                 } else {
                     state = Type.Other;
@@ -128,7 +170,7 @@ class LineParser {
                 state = Type.Bracket;
             }
         } else {
-            if (Character.isJavaIdentifierStart(ch)) {
+            if (ch < charClass.length ? chClass == IDENTIFIER_START : Character.isJavaIdentifierStart(ch)) {
                 state = Type.Identifier;
             } else {
                 state = Type.Other;
@@ -136,12 +178,16 @@ class LineParser {
         }
     }
 
+    private static boolean isIdentifierPart(char ch) {
+        return ch < charClass.length ? charClass[ch] >= IDENTIFIER_PART : Character.isJavaIdentifierPart(ch);
+    }
+
     private boolean isNextSlash(int pos) {
-        return pos < inputStringToParse.length() - 1 && inputStringToParse.charAt(pos + 1) == '/';
+        return pos < lineEnd - 1 && text.charAt(pos + 1) == '/';
     }
 
     private boolean isNextStar(int pos) {
-        return pos < inputStringToParse.length() - 1 && inputStringToParse.charAt(pos + 1) == '*';
+        return pos < lineEnd - 1 && text.charAt(pos + 1) == '*';
     }
 
     public int size() {
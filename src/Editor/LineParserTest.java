@@ -272,6 +272,32 @@ public class LineParserTest extends Assert {
         }
     }
 
+    @Test
+    public void testParseLineInRangeEqualsParseLine() throws Exception {
+        for (int i = 0; i < countOfRandomTests; i++) {
+            String inputString = randomString(new Random().nextInt(maxLength)).toString() + " int /* a */ { // b";
+            boolean isCommentContinuous = i % 2 == 0;
+
+            ArrayList<Word> res = new ArrayList<>();
+            LineParser lineParser = new LineParser(inputString, FileType.Java, isCommentContinuous, res);
+            lineParser.parseLine();
+
+            StringBuilder text = new StringBuilder("int\n").append(inputString).append("\nint");
+            WordsArrayList words = new WordsArrayList();
+            LineParser rangeParser = new LineParser(FileType.Java, words);
+            rangeParser.parseLine(text, 4, 4 + inputString.length(), isCommentContinuous);
+
+            assertEquals(lineParser.isCommentContinuous(), rangeParser.isCommentContinuous());
+            assertEquals(res.size(), rangeParser.size());
+            assertEquals(res.size(), words.size());
+            for (int j = 0; j < res.size(); j++) {
+                assertEquals(res.get(j).start, words.get(j).start);
+                assertEquals(res.get(j).end, words.get(j).end);
+                assertEquals(res.get(j).type, words.get(j).type);
+            }
+        }
+    }
+
     private StringBuilder randomString(int length) {
         Random random = new Random();
         StringBuilder res = new StringBuilder();
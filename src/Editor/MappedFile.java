@@ -0,0 +1,354 @@
+package Editor;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// UTF-8 file mapped to memory and shown as text with lines separated by '\n'.
+// Lines are indexed by Indexer (byte scan, no decoding) and added by addLines,
+// text is decoded by pages of PAGE_LINES lines only when somebody reads it
+class MappedFile implements CharSequence {
+
+    private static final int PAGE_LINES = 256;
+    private static final int CACHED_PAGES = 64;
+    private static final int REGION_SIZE = 1 << 30;
+
+    private final MappedByteBuffer[] regions;
+    private final long byteSize;
+    private final TLongArrayList pageByteStart;
+    private final TIntArrayList pageCharStart;
+    private final LinkedHashMap<Integer, char[]> cache;
+    private int lastPage;
+    private char[] lastPageChars;
+    private int lines;
+    private long indexedBytes;
+    private long chars; // length of indexed lines + '\n' after every line
+
+    MappedFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byteSize = channel.size();
+            regions = new MappedByteBuffer[(int) ((byteSize + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = (long) i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, byteSize - start));
+            }
+        }
+
+        pageByteStart = new TLongArrayList();
+        pageCharStart = new TIntArrayList();
+        cache = createCache();
+        lastPage = -1;
+    }
+
+    private MappedFile(MappedFile file) {
+        regions = file.regions;
+        byteSize = file.byteSize;
+        pageByteStart = new TLongArrayList(file.pageByteStart.toArray());
+        pageCharStart = new TIntArrayList(file.pageCharStart.toArray());
+        cache = createCache();
+        lastPage = -1;
+        lines = file.lines;
+        indexedBytes = file.indexedBytes;
+        chars = file.chars;
+    }
+
+    private static LinkedHashMap<Integer, char[]> createCache() {
+        return new LinkedHashMap<Integer, char[]>(CACHED_PAGES, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
+    }
+
+    // the same text with own page cache, it can be read from another thread
+    public MappedFile view() {
+        return new MappedFile(this);
+    }
+
+    public Indexer indexer() {
+        return new Indexer();
+    }
+
+    public long byteSize() {
+        return byteSize;
+    }
+
+    public void addLines(LineBatch batch) {
+        // last page can get new lines
+        cache.remove(pageCharStart.size() - 1);
+        lastPage = -1;
+
+        int page = 0;
+        for (int len : batch.lengths) {
+            if (lines % PAGE_LINES == 0) {
+                pageByteStart.add(batch.pageStarts[page++]);
+                pageCharStart.add((int) chars);
+            }
+            lines++;
+            chars += len + 1;
+        }
+        if (chars - 1 > Integer.MAX_VALUE) {
+            throw new IllegalStateException("File is too big");
+        }
+
+        indexedBytes = batch.endByte;
+    }
+
+    public int length() {
+        return (int) Math.max(chars - 1, 0);
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length());
+        }
+
+        if (lastPage < 0 || index < pageCharStart.get(lastPage) ||
+                index - pageCharStart.get(lastPage) >= lastPageChars.length) {
+            int page = pageCharStart.binarySearch(index);
+            if (page < 0) {
+                page = -page - 2;
+            }
+
+            char[] pageChars = cache.get(page);
+            if (pageChars == null) {
+                pageChars = decodePage(page);
+                cache.put(page, pageChars);
+            }
+            lastPage = page;
+            lastPageChars = pageChars;
+        }
+
+        return lastPageChars[index - pageCharStart.get(lastPage)];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder res = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            res.append(charAt(i));
+        }
+        return res;
+    }
+
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private char[] decodePage(int page) {
+        long start = pageByteStart.get(page);
+        long end = page + 1 < pageByteStart.size() ? pageByteStart.get(page + 1) : indexedBytes;
+        long endChar = page + 1 < pageCharStart.size() ? pageCharStart.get(page + 1) : chars;
+        char[] res = new char[(int) (endChar - pageCharStart.get(page))];
+
+        byte[] bytes = new byte[(int) (end - start)];
+        readBytes(start, bytes);
+        Utf8Decoder decoder = new Utf8Decoder(res);
+        decoder.decode(bytes, bytes.length);
+        decoder.flush();
+        return res;
+    }
+
+    private void readBytes(long pos, byte[] dst) {
+        int done = 0;
+        while (done < dst.length) {
+            MappedByteBuffer region = regions[(int) (pos / REGION_SIZE)];
+            int inRegion = (int) (pos % REGION_SIZE);
+            int n = Math.min(dst.length - done, region.capacity() - inRegion);
+            ByteBuffer bytes = region.duplicate();
+            bytes.position(inRegion);
+            bytes.get(dst, done, n);
+            done += n;
+            pos += n;
+        }
+    }
+
+    // number of chars encoded by byte b, indexer and decoder must agree on it:
+    // continuation bytes give nothing, lead of 4 bytes gives surrogate pair
+    private static int charCount(byte b) {
+        if ((b & 0xC0) == 0x80) {
+            return 0;
+        }
+        return (b & 0xF8) == 0xF0 ? 2 : 1;
+    }
+
+    static class LineBatch {
+        final int[] lengths;
+        final long[] pageStarts;
+        final long endByte;
+
+        LineBatch(int[] lengths, long[] pageStarts, long endByte) {
+            this.lengths = lengths;
+            this.pageStarts = pageStarts;
+            this.endByte = endByte;
+        }
+    }
+
+    // Scans bytes of the file for line terminators (\n, \r, \r\n), can be used from any thread
+    class Indexer {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final byte[] buffer;
+        private long pos;
+        private long lineStart;
+        private int lineLength;
+        private int lines;
+        private boolean afterCR;
+
+        Indexer() {
+            buffer = new byte[BUFFER_SIZE];
+        }
+
+        public boolean isDone() {
+            return pos >= byteSize && lineStart >= byteSize;
+        }
+
+        public long getPosition() {
+            return pos;
+        }
+
+        public LineBatch next(int maxLines) {
+            TIntArrayList lengths = new TIntArrayList();
+            TLongArrayList pageStarts = new TLongArrayList();
+
+            while (pos < byteSize && lengths.size() < maxLines) {
+                int n = (int) Math.min(BUFFER_SIZE, byteSize - pos);
+                MappedByteBuffer region = regions[(int) (pos / REGION_SIZE)];
+                int inRegion = (int) (pos % REGION_SIZE);
+                n = Math.min(n, region.capacity() - inRegion);
+                ByteBuffer bytes = region.duplicate();
+                bytes.position(inRegion);
+                bytes.get(buffer, 0, n);
+
+                int i = 0;
+                while (i < n && lengths.size() < maxLines) {
+                    byte b = buffer[i++];
+                    if (afterCR) {
+                        afterCR = false;
+                        if (b == '\n') {
+                            lineStart = pos + i;
+                            continue;
+                        }
+                    }
+
+                    if (b == '\n' || b == '\r') {
+                        if (lines++ % PAGE_LINES == 0) {
+                            pageStarts.add(lineStart);
+                        }
+                        lengths.add(lineLength);
+                        lineLength = 0;
+                        lineStart = pos + i;
+                        afterCR = b == '\r';
+                    } else {
+                        lineLength += charCount(b);
+                    }
+                }
+                pos += i;
+            }
+
+            if (pos >= byteSize && !afterCR && lineStart < byteSize && lengths.size() < maxLines) {
+                if (lines++ % PAGE_LINES == 0) {
+                    pageStarts.add(lineStart);
+                }
+                lengths.add(lineLength);
+                lineStart = byteSize;
+            }
+            if (afterCR && pos >= byteSize) {
+                lineStart = byteSize;
+            }
+
+            return new LineBatch(lengths.toArray(), pageStarts.toArray(), lineStart);
+        }
+    }
+
+    // Decodes UTF-8 by the same rules as charCount, malformed sequences become U+FFFD
+    private static class Utf8Decoder {
+        private final char[] dst;
+        private int dstPos;
+        private int codePoint;
+        private int remaining;
+        private int count;
+        private boolean afterCR;
+
+        Utf8Decoder(char[] dst) {
+            this.dst = dst;
+        }
+
+        void decode(byte[] bytes, int n) {
+            for (int i = 0; i < n && dstPos < dst.length; i++) {
+                byte b = bytes[i];
+                if (remaining > 0 && (b & 0xC0) == 0x80) {
+                    codePoint = (codePoint << 6) | (b & 0x3F);
+                    if (--remaining == 0) {
+                        emitCodePoint();
+                    }
+                    continue;
+                }
+
+                flush();
+                if ((b & 0xC0) == 0x80) {
+                    continue;
+                }
+
+                if (afterCR) {
+                    afterCR = false;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+
+                if (b == '\n' || b == '\r') {
+                    dst[dstPos++] = '\n';
+                    afterCR = b == '\r';
+                } else if ((b & 0x80) == 0) {
+                    dst[dstPos++] = (char) b;
+                } else if ((b & 0xE0) == 0xC0) {
+                    start(b & 0x1F, 1);
+                } else if ((b & 0xF0) == 0xE0) {
+                    start(b & 0x0F, 2);
+                } else if ((b & 0xF8) == 0xF0) {
+                    start(b & 0x07, 3);
+                } else {
+                    dst[dstPos++] = '\uFFFD';
+                }
+            }
+        }
+
+        // finish unfinished sequence
+        void flush() {
+            if (remaining > 0) {
+                remaining = 0;
+                for (int i = 0; i < count && dstPos < dst.length; i++) {
+                    dst[dstPos++] = '\uFFFD';
+                }
+            }
+        }
+
+        private void start(int bits, int continuation) {
+            codePoint = bits;
+            remaining = continuation;
+            count = continuation == 3 ? 2 : 1;
+        }
+
+        private void emitCodePoint() {
+            if (count == 2) {
+                if (codePoint >= 0x10000 && codePoint <= 0x10FFFF) {
+                    dst[dstPos++] = Character.highSurrogate(codePoint);
+                    dst[dstPos++] = Character.lowSurrogate(codePoint);
+                } else {
+                    dst[dstPos++] = '\uFFFD';
+                    dst[dstPos++] = '\uFFFD';
+                }
+            } else {
+                dst[dstPos++] = (char) codePoint;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package Editor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MappedFileTest extends Assert {
+
+    private final static int countOfRandomLines = 5000;
+    private final static int maxLineLength = 100;
+    private final static String chars = "abc  123{}()\tфыв中";
+
+    private static List<String> readLines(byte[] content, int batchSize) throws IOException {
+        Path path = Files.createTempFile("editor", ".txt");
+        try {
+            Files.write(path, content);
+            MappedFile file = new MappedFile(path);
+            MappedFile.Indexer indexer = file.indexer();
+
+            List<Integer> lengths = new ArrayList<>();
+            while (!indexer.isDone()) {
+                MappedFile.LineBatch batch = indexer.next(batchSize);
+                file.addLines(batch);
+                for (int len : batch.lengths) {
+                    lengths.add(len);
+                }
+            }
+
+            List<String> res = new ArrayList<>();
+            int pos = 0;
+            for (int len : lengths) {
+                res.add(file.subSequence(pos, pos + len).toString());
+                pos += len + 1;
+            }
+            assertEquals(Math.max(pos - 1, 0), file.length());
+            return res;
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static List<String> readLines(String content) throws IOException {
+        return readLines(content.getBytes(StandardCharsets.UTF_8), 1);
+    }
+
+    @Test
+    public void testVoidFile() throws IOException {
+        assertEquals(0, readLines("").size());
+    }
+
+    @Test
+    public void testLineTerminators() throws IOException {
+        String[] inputStrings = {
+                "a",
+                "a\n",
+                "a\n\n",
+                "a\r\nb",
+                "a\r\n\r\nb\r\n",
+                "a\rb\r",
+                "\r\n\n\r",
+                "фы\n😀\r\n"
+        };
+
+        for (String inputString : inputStrings) {
+            Path path = Files.createTempFile("editor", ".txt");
+            Files.write(path, inputString.getBytes(StandardCharsets.UTF_8));
+            List<String> expected = Files.readAllLines(path);
+            Files.delete(path);
+
+            assertEquals(expected, readLines(inputString));
+        }
+    }
+
+    @Test
+    public void testMalformedInputKeepsLines() throws IOException {
+        byte[] content = {'a', (byte) 0xD1, '\n', (byte) 0x80, 'b', '\n', (byte) 0xF0, (byte) 0x9F, 'c'};
+        List<String> lines = readLines(content, 1);
+
+        assertEquals(3, lines.size());
+        assertEquals("a�", lines.get(0));
+        assertEquals("b", lines.get(1));
+        assertEquals("��c", lines.get(2));
+    }
+
+    @Test
+    public void testRandomText() throws IOException {
+        Random rand = new Random();
+        StringBuilder sb = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < countOfRandomLines; i++) {
+            StringBuilder line = new StringBuilder();
+            int len = rand.nextInt(maxLineLength);
+            for (int j = 0; j < len; j++) {
+                line.append(chars.charAt(rand.nextInt(chars.length())));
+            }
+            if (rand.nextInt(10) == 0) {
+                line.append("😀");
+            }
+            expected.add(line.toString());
+            sb.append(line).append(rand.nextBoolean() ? "\n" : "\r\n");
+        }
+
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, readLines(content, 1000));
+        assertEquals(expected, readLines(content, Integer.MAX_VALUE));
+    }
+}
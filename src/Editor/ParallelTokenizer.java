@@ -0,0 +1,188 @@
+package Editor;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+// Tokenizes lines by chunks in fork/join pool. State at the start of a chunk isn't known before previous
+// chunks are parsed, so every chunk is parsed for both states: in comment and not in comment.
+// The second parsing stops at the first line after which both states are equal, the rest is the same.
+// Then chunks are joined one after another, the result of a chunk is chosen by the state after previous one
+class ParallelTokenizer {
+
+    static final int CHUNK_ROWS = 1024;
+
+    private final String text; // lines separated by '\n'
+    private final int[] lineLengths;
+    private final int[] lineStarts;
+    private final FileType fileType;
+    private final int chunkRows;
+    private final BooleanSupplier isCancelled;
+    private WordsArrayList words;
+    private TIntArrayList rowSizes;
+    private boolean[] commentContinuous;
+
+    ParallelTokenizer(String text, int[] lineLengths, FileType fileType, BooleanSupplier isCancelled) {
+        this(text, lineLengths, fileType, CHUNK_ROWS, isCancelled);
+    }
+
+    ParallelTokenizer(String text, int[] lineLengths, FileType fileType, int chunkRows, BooleanSupplier isCancelled) {
+        if (chunkRows <= 0) {
+            throw new IllegalArgumentException("Chunk rows: " + chunkRows);
+        }
+
+        this.text = text;
+        this.lineLengths = lineLengths;
+        this.fileType = fileType;
+        this.chunkRows = chunkRows;
+        this.isCancelled = isCancelled;
+
+        lineStarts = new int[lineLengths.length];
+        int pos = 0;
+        for (int i = 0; i < lineLengths.length; i++) {
+            lineStarts[i] = pos;
+            pos += lineLengths[i] + 1;
+        }
+    }
+
+    // returns false if it was cancelled
+    public boolean tokenize(boolean startCommentContinuous) {
+        return tokenize(startCommentContinuous, Runtime.getRuntime().availableProcessors() > 1);
+    }
+
+    boolean tokenize(boolean startCommentContinuous, boolean parallel) {
+        int chunks = (lineLengths.length + chunkRows - 1) / chunkRows;
+        Chunk[][] results = new Chunk[chunks][2];
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(new ChunkTask(results, startCommentContinuous, 0, chunks));
+        } else {
+            // nobody can parse next chunks meanwhile, state of every chunk is known
+            boolean state = startCommentContinuous;
+            for (int i = 0; i < chunks && !isCancelled.getAsBoolean(); i++) {
+                Chunk chunk = tokenizeChunk(i, state, null);
+                // it could be cancelled in the middle of the chunk, even before its first line
+                if (chunk.rows < chunk.commentContinuous.length || isCancelled.getAsBoolean()) {
+                    break;
+                }
+                results[i][state ? 1 : 0] = chunk;
+                state = chunk.commentContinuous[chunk.rows - 1];
+            }
+        }
+        if (isCancelled.getAsBoolean()) {
+            return false;
+        }
+
+        words = new WordsArrayList();
+        rowSizes = new TIntArrayList(lineLengths.length);
+        commentContinuous = new boolean[lineLengths.length];
+        boolean state = startCommentContinuous;
+        for (int i = 0; i < chunks; i++) {
+            Chunk chunk = results[i][state ? 1 : 0];
+            add(chunk, 0, chunk.rows);
+            if (chunk.same != null) {
+                add(chunk.same, chunk.rows, chunk.same.rows);
+            }
+            state = commentContinuous[rowSizes.size() - 1];
+        }
+        return true;
+    }
+
+    private void add(Chunk chunk, int fromRow, int toRow) {
+        int start = 0;
+        for (int i = 0; i < fromRow; i++) {
+            start += chunk.rowSizes.get(i);
+        }
+        int end = start;
+        for (int i = fromRow; i < toRow; i++) {
+            end += chunk.rowSizes.get(i);
+        }
+
+        words.add(words.size(), chunk.words, start, end);
+        System.arraycopy(chunk.commentContinuous, fromRow, commentContinuous, rowSizes.size(), toRow - fromRow);
+        rowSizes.addAll(chunk.rowSizes.subList(fromRow, toRow));
+    }
+
+    public WordsArrayList getWords() {
+        return words;
+    }
+
+    public TIntArrayList getRowSizes() {
+        return rowSizes;
+    }
+
+    // comment state after every line
+    public boolean[] getCommentContinuous() {
+        return commentContinuous;
+    }
+
+    // if the state after a line is the same as in the other chunk, parsing is stopped
+    private Chunk tokenizeChunk(int chunk, boolean isCommentContinuous, Chunk other) {
+        int startRow = chunk * chunkRows;
+        int endRow = Math.min(startRow + chunkRows, lineLengths.length);
+        Chunk res = new Chunk(endRow - startRow);
+        LineParser lineParser = new LineParser(fileType, res.words);
+        for (int i = startRow; i < endRow && !isCancelled.getAsBoolean(); i++) {
+            lineParser.parseLine(text, lineStarts[i], lineStarts[i] + lineLengths[i], isCommentContinuous);
+
+            res.rowSizes.add(lineParser.size());
+            isCommentContinuous = lineParser.isCommentContinuous();
+            res.commentContinuous[res.rows++] = isCommentContinuous;
+
+            if (other != null && other.commentContinuous[i - startRow] == isCommentContinuous && i + 1 < endRow) {
+                res.same = other;
+                break;
+            }
+        }
+        return res;
+    }
+
+    private static class Chunk {
+        final WordsArrayList words;
+        final TIntArrayList rowSizes;
+        final boolean[] commentContinuous;
+        int rows;
+        Chunk same; // the rest of rows are the same as in this chunk
+
+        Chunk(int rows) {
+            words = new WordsArrayList();
+            rowSizes = new TIntArrayList(rows);
+            commentContinuous = new boolean[rows];
+        }
+    }
+
+    // chunks [from, to)
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[][] results;
+        private final boolean startCommentContinuous;
+        private final int from;
+        private final int to;
+
+        ChunkTask(Chunk[][] results, boolean startCommentContinuous, int from, int to) {
+            this.results = results;
+            this.startCommentContinuous = startCommentContinuous;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(results, startCommentContinuous, from, middle),
+                        new ChunkTask(results, startCommentContinuous, middle, to));
+                return;
+            }
+
+            // state at the start of the first chunk is known
+            if (from == 0) {
+                results[0][startCommentContinuous ? 1 : 0] = tokenizeChunk(0, startCommentContinuous, null);
+            } else {
+                results[from][0] = tokenizeChunk(from, false, null);
+                results[from][1] = tokenizeChunk(from, true, results[from][0]);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package Editor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class ParallelTokenizerTest extends Assert {
+
+    private static final String[] pieces = {"/*", "*/", "//", " ", "{", "}", "a", "int", "("};
+    private Random rand;
+
+    @Before
+    public void init() {
+        rand = new Random();
+    }
+
+    @Test
+    public void testEqualsSequentialParsing() {
+        for (int test = 0; test < 100; test++) {
+            int rows = rand.nextInt(100) + 1;
+            String[] lines = new String[rows];
+            int[] lineLengths = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                StringBuilder line = new StringBuilder();
+                for (int j = rand.nextInt(6); j > 0; j--) {
+                    line.append(pieces[rand.nextInt(pieces.length)]);
+                }
+                lines[i] = line.toString();
+                lineLengths[i] = lines[i].length();
+            }
+            boolean startCommentContinuous = rand.nextBoolean();
+
+            ArrayList<Word> expected = new ArrayList<>();
+            boolean[] expectedCommentContinuous = new boolean[rows];
+            boolean state = startCommentContinuous;
+            for (int i = 0; i < rows; i++) {
+                LineParser lineParser = new LineParser(lines[i], FileType.Java, state, expected);
+                lineParser.parseLine();
+                state = lineParser.isCommentContinuous();
+                expectedCommentContinuous[i] = state;
+            }
+
+            ParallelTokenizer tokenizer = new ParallelTokenizer(String.join("\n", lines), lineLengths, FileType.Java,
+                    rand.nextInt(8) + 1, () -> false);
+            assertEquals(true, tokenizer.tokenize(startCommentContinuous, rand.nextBoolean()));
+
+            WordsArrayList actual = tokenizer.getWords();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).start, actual.get(i).start);
+                assertEquals(expected.get(i).end, actual.get(i).end);
+                assertEquals(expected.get(i).type, actual.get(i).type);
+            }
+            assertArrayEquals(expectedCommentContinuous, tokenizer.getCommentContinuous());
+            assertEquals(rows, tokenizer.getRowSizes().size());
+        }
+    }
+
+    @Test
+    public void testCancel() {
+        ParallelTokenizer tokenizer = new ParallelTokenizer("a\n/* b", new int[]{1, 4}, FileType.Java, 1, () -> true);
+        assertEquals(false, tokenizer.tokenize(false, true));
+        assertEquals(false, tokenizer.tokenize(false, false));
+    }
+
+    @Test
+    public void testCancelInTheMiddle() {
+        String text = "a\n/* b\nc */\nd";
+        int[] lineLengths = new int[]{1, 4, 4, 1};
+        for (int calls = 0; calls < 12; calls++) {
+            int[] count = new int[1];
+            int n = calls;
+            ParallelTokenizer tokenizer = new ParallelTokenizer(text, lineLengths, FileType.Java, 1,
+                    () -> count[0]++ >= n);
+            assertEquals(false, tokenizer.tokenize(false, false));
+        }
+    }
+}
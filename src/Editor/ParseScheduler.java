@@ -0,0 +1,57 @@
+package Editor;
+
+import javax.swing.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs parser passes in a background thread one after another until the document is parsed.
+// A pass is stopped by any change of lines made after it was started, its result is thrown away
+class ParseScheduler {
+
+    private static final int PASS_ROWS = 1 << 16;
+
+    private final EDocument doc;
+    private final ExecutorService executor;
+    private boolean isRunning;
+    private boolean isScheduled;
+
+    ParseScheduler(EDocument doc) {
+        this.doc = doc;
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        isRunning = false;
+        isScheduled = false;
+    }
+
+    // EDT, called on changes of lines. The pass is created after the change is finished
+    public void schedule() {
+        if (!isScheduled) {
+            isScheduled = true;
+            SwingUtilities.invokeLater(this::start);
+        }
+    }
+
+    private void start() {
+        isScheduled = false;
+        if (isRunning || doc.isAllParsed()) {
+            return;
+        }
+
+        Parser.Pass pass = doc.createParsePass(PASS_ROWS);
+        isRunning = true;
+        executor.execute(() -> {
+            try {
+                pass.run();
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    isRunning = false;
+                    doc.publishParsePass(pass);
+                    start();
+                });
+            }
+        });
+    }
+}
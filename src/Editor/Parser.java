@@ -2,151 +2,255 @@ package Editor;
 
 import Editor.Word.Type;
 import gnu.trove.list.array.TIntArrayList;
-import javafx.util.Pair;
-
-import java.util.ArrayList;
-import java.util.regex.Pattern;
 
 class Parser {
 
-    private static final Pattern openBracketPattern = Pattern.compile("[\\{\\[\\(]");
-    private static final Pattern bracket = Pattern.compile("[\\[\\]\\{\\}\\(\\)]");
     private final Words dataInWords;
-    private final StringBuilder data;
-    private final TIntArrayList length;
+    private final TextStorage data;
+    private final LineIndex length;
     private final EDocument doc;
-    private Word firstBracket;
-    private Word secondBracket;
-    private Pair<Integer, Integer> firstBracketPos;
-    private Pair<Integer, Integer> secondBracketPos;
+    private final WordsArrayList parsedWords; // result of parse, reused by every parse
+    private final TIntArrayList parsedRowSizes;
+    private final TIntArrayList parsedBrackets;
+    private LineParser lineParser; // adds words to parsedWords, created again when file type is changed
+    // words with the light, row -1 if there is no light
+    private int firstBracketRow;
+    private int firstBracketWord;
+    private int secondBracketRow;
+    private int secondBracketWord;
+    // pair of the first bracket is searched in parsed rows, for an open bracket it can be after them,
+    // then it is searched again when more rows are parsed
+    private boolean isPairPending;
+    private char pairBracket; // the first bracket
+    private int pairCount; // count of not matched brackets after the row of the first one
     private FileType fileType;
+    private int parsedRows; // rows [0, parsedRows) are parsed, the rest is parsed on demand
+    private boolean parsedCommentContinuous; // comment state after the last parsed row
+    private volatile int version; // changed with every change of lines, stops passes started before it
 
-    public Parser(EDocument doc, Words dataInWords, StringBuilder data, TIntArrayList length) {
+    public Parser(EDocument doc, Words dataInWords, TextStorage data, LineIndex length) {
         this.doc = doc;
         this.dataInWords = dataInWords;
         this.data = data;
         this.length = length;
+        parsedWords = new WordsArrayList();
+        parsedRowSizes = new TIntArrayList();
+        parsedBrackets = new TIntArrayList();
+        lineParser = new LineParser(FileType.Text, parsedWords);
+        firstBracketRow = -1;
+        secondBracketRow = -1;
 
         fileType = FileType.Text;
     }
 
     // Brackets
 
-    private static boolean isBracket(Character ch) {
-        return bracket.matcher(ch.toString()).matches();
-    }
-
     private int findWordInLine(int column, int row) {
         int i = 0;
         int wordNumber = 0;
         while (i < column && wordNumber < dataInWords.rowSize(row)) {
-            i += dataInWords.get(row, wordNumber++).length();
+            i += dataInWords.endAt(row, wordNumber) - dataInWords.startAt(row, wordNumber);
+            wordNumber++;
         }
 
-        if (i > column) {
-            throw new IllegalStateException("Column is too big to parsed line number" + row);
+        if (i > column) { // column is inside a word, e.g. bracket in a comment
+            return -1;
         }
 
         return wordNumber - 1;
     }
 
-    private void bracketLightOff(Word bracket, Pair<Integer, Integer> bracketPos) {
-        if (bracket != null && bracket.type != null) {
-            bracket.type = Type.Bracket;
-            dataInWords.set(bracketPos.getKey(), bracketPos.getValue(), bracket);
+    // only the color of the bracket is changed, it is repainted without the rest of the row
+    private void setBracketType(int row, int wordN, Type type) {
+        dataInWords.setType(row, wordN, type);
+        doc.columnsChanged(row, dataInWords.startAt(row, wordN), dataInWords.endAt(row, wordN));
+    }
 
-            bracket.type = null;
+    private void bracketLightOff(int row, int wordN) {
+        if (row >= 0) {
+            setBracketType(row, wordN, Type.Bracket);
         }
     }
 
     public void bracketLightOff() {
-        bracketLightOff(firstBracket, firstBracketPos);
-        bracketLightOff(secondBracket, secondBracketPos);
+        bracketLightOff(firstBracketRow, firstBracketWord);
+        bracketLightOff(secondBracketRow, secondBracketWord);
+        firstBracketRow = -1;
+        secondBracketRow = -1;
+        isPairPending = false;
+    }
+
+    // word of row with the bracket, where count of not matched brackets of the same kind as first becomes 0.
+    // Words are checked from wordInLine + 1 forward for open first bracket, else from wordInLine - 1 backward.
+    // Returns -k - 1 if the bracket isn't in the row, k is count of not matched brackets after the row
+    private int findPairInRow(int row, int lineStart, int wordInLine, char first, int k) {
+        boolean openBracket = BracketIndex.isOpen(first);
+        int kind = BracketIndex.kind(first);
+        for (int i = wordInLine + (openBracket ? 1 : -1); i >= 0 && i < dataInWords.rowSize(row);
+             i += openBracket ? 1 : -1) {
+            Type type = dataInWords.typeAt(row, i);
+            if (type == Type.Bracket || type == Type.BracketLight) {
+                char ch = data.charAt(lineStart + dataInWords.startAt(row, i));
+                if (BracketIndex.kind(ch) == kind) {
+                    k = openBracket != BracketIndex.isOpen(ch) ? k - 1 : k + 1;
+                    if (k == 0) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return -k - 1;
     }
 
     public void bracketLight(int column, int row, int pos) {
-        if (column > 0 && isBracket(data.charAt(pos - 1))) {
+        ensureParsed(row + 1);
+        if (column > 0 && BracketIndex.kind(data.charAt(pos - 1)) >= 0) {
             int wordInLine = findWordInLine(column, row);
-            if (dataInWords.get(row, wordInLine).type != Type.Bracket) {
+            if (wordInLine < 0 || dataInWords.typeAt(row, wordInLine) != Type.Bracket) {
                 return;
             }
-            firstBracket = dataInWords.get(row, wordInLine);
-            firstBracket.type = Type.BracketLight;
-            firstBracketPos = new Pair<>(row, wordInLine);
+            setBracketType(row, wordInLine, Type.BracketLight);
+            firstBracketRow = row;
+            firstBracketWord = wordInLine;
+            secondBracketRow = -1;
             char firstBracketChar = data.charAt(pos - 1);
 
-            pos -= firstBracket.start + 1;
-
-            dataInWords.set(row, wordInLine, firstBracket);
-
-            secondBracket = null;
-
-            boolean openBracket = openBracketPattern.matcher(Character.toString(firstBracketChar)).matches();
-
-            Word word;
-            int k = 1;
-            do {
-                wordInLine = openBracket ? wordInLine + 1 : wordInLine - 1;
-                if (wordInLine >= dataInWords.rowSize(row)) {
-                    pos += length.get(row) + 1;
-                    row++;
-                    if (row >= dataInWords.size()) {
-                        return;
-                    }
-                    wordInLine = 0;
-                }
-                if (wordInLine < 0) {
-                    row--;
-                    if (row < 0 || row >= dataInWords.size()) {
-                        return;
-                    }
-                    pos -= length.get(row) + 1;
-                    wordInLine = Math.max(dataInWords.rowSize(row) - 1, 0);
-                }
+            int res = findPairInRow(row, pos - dataInWords.startAt(row, wordInLine) - 1, wordInLine,
+                    firstBracketChar, 1);
+            if (res >= 0) {
+                lightPair(row, res);
+                return;
+            }
 
-                word = dataInWords.rowSize(row) == 0 ? null : dataInWords.get(row, wordInLine);
+            isPairPending = true;
+            pairBracket = firstBracketChar;
+            pairCount = -res - 1;
+            lightPendingPair();
+        }
+    }
 
-                if (word != null && word.type == Type.Bracket &&
-                        Math.abs(data.charAt(pos + word.start) - firstBracketChar) <= 2) {
-                    k = !(openBracket == openBracketPattern.matcher(Character.toString(data.charAt(pos + word.start))).matches()) ?
-                            k - 1 : k + 1;
-                }
+    // the row with the pair is found by index of brackets, only this row is checked by words.
+    // The rest of the file isn't parsed for it in EDT, the pair is lit when its row is parsed
+    private void lightPendingPair() {
+        if (!isPairPending) {
+            return;
+        }
 
+        BracketIndex brackets = dataInWords.getBrackets();
+        boolean openBracket = BracketIndex.isOpen(pairBracket);
+        int kind = BracketIndex.kind(pairBracket);
+        int pairRow = openBracket ? brackets.findClose(kind, firstBracketRow, pairCount) :
+                brackets.findOpen(kind, firstBracketRow, pairCount);
+        if (openBracket && (pairRow < 0 || pairRow >= parsedRows) && !isAllParsed()) {
+            return;
+        }
 
-            } while (k > 0);
+        isPairPending = false;
+        if (pairRow < 0) {
+            return;
+        }
 
-            secondBracket = word;
-            if (word != null) {
-                secondBracket.type = Type.BracketLight;
-                dataInWords.set(row, wordInLine, secondBracket);
-                secondBracketPos = new Pair<>(row, wordInLine);
-            }
+        int res = findPairInRow(pairRow, doc.getPos(pairRow, 0), openBracket ? -1 : dataInWords.rowSize(pairRow),
+                pairBracket, brackets.getNeed());
+        // res < 0 if the index doesn't match words of the row, it is treated as no pair
+        if (res >= 0) {
+            lightPair(pairRow, res);
         }
     }
 
+    private void lightPair(int row, int wordN) {
+        setBracketType(row, wordN, Type.BracketLight);
+        secondBracketRow = row;
+        secondBracketWord = wordN;
+    }
+
     // Words
 
     public boolean setFileType(FileType fileType) {
         boolean res = fileType != this.fileType;
         this.fileType = fileType;
+        if (res) {
+            lineParser = new LineParser(fileType, parsedWords);
+        }
         if (fileType == FileType.Text) {
             dataInWords.clear();
+            parsedRows = 0;
+            firstBracketRow = -1;
+            secondBracketRow = -1;
+            isPairPending = false;
         }
+        version++;
         return res;
     }
 
+    public void addLines(int row, int count) {
+        version++;
+        // lines inserted into parsed part are parsed by the following parse(), as all lines of parsed document
+        if (row < parsedRows || parsedRows == dataInWords.size()) {
+            parsedRows += count;
+        }
+        dataInWords.addVoidLines(row, count);
+    }
+
+    public void removeLines(int startRow, int endRow) {
+        version++;
+        if (startRow < parsedRows) {
+            parsedRows -= Math.min(endRow + 1, parsedRows) - startRow;
+        }
+        dataInWords.remove(startRow, endRow);
+    }
+
     // Parsing
 
+    // forget all parsed lines, they will be parsed by ensureParsed
+    public void reset() {
+        version++;
+        dataInWords.clear();
+        dataInWords.updateSize(length.size());
+        parsedRows = 0;
+        parsedCommentContinuous = false;
+        firstBracketRow = -1; // words with the light are removed
+        secondBracketRow = -1;
+        isPairPending = false;
+        doc.rowsChanged(0, Integer.MAX_VALUE);
+    }
+
+    public void ensureParsed(int endRow) {
+        endRow = Math.min(endRow, length.size());
+        if (fileType == FileType.Text || endRow <= parsedRows) {
+            return;
+        }
+
+        dataInWords.updateSize(length.size());
+        dataInWords.setCommentContinuous(parsedRows, parsedCommentContinuous);
+        forceParse(parsedRows, endRow);
+        lightPendingPair();
+    }
+
+    public boolean isAllParsed() {
+        return fileType == FileType.Text || parsedRows >= length.size();
+    }
+
+    public int getParsedRows() {
+        return parsedRows;
+    }
+
     public void forceParse(int row, int endRow) {
-        parse(row, endRow, true);
+        parse(row, endRow, endRow, true);
     }
 
-    public void parse(int row, int endRow) {
-        parse(row, endRow, false);
+    // rows till max(endRow, syncEndRow) are parsed now. If comment state of the next rows is changed,
+    // they become not parsed and are parsed later by a Pass or ensureParsed
+    public void parse(int row, int endRow, int syncEndRow) {
+        version++;
+        parse(row, endRow, syncEndRow, false);
     }
 
-    private void parse(int row, int endRow, boolean forceEnd) {
+    private void parse(int row, int endRow, int syncEndRow, boolean forceEnd) {
         row = Math.min(row, length.size() - 1);
+        if (!forceEnd && row >= parsedRows) {
+            return;
+        }
 
         boolean parseAll = length.size() != dataInWords.size();
 
@@ -155,18 +259,23 @@ class Parser {
         endRow = Math.min(length.size(), endRow);
 
         int pos = doc.getPos(row, 0);
-        ArrayList<Word> res = new ArrayList<>();
-        TIntArrayList resLength = new TIntArrayList();
+        // buffers are reused, resetQuick() keeps their arrays unlike clear()
+        parsedWords.clear();
+        parsedRowSizes.resetQuick();
+        parsedBrackets.resetQuick();
         int end = 0;
-        for (int i = row; i < (forceEnd ? endRow : length.size()); i++) {
-            LineParser lineParser = new LineParser(data.substring(pos, pos + length.get(i)), fileType, dataInWords, res, i);
+        for (int i = row; i < (forceEnd ? endRow : Math.min(parsedRows, length.size())); i++) {
+            lineParser.parseLine(data, pos, pos + length.get(i), dataInWords.isCommentContinuous(i));
 
-            lineParser.parseLine();
-
-            resLength.add(lineParser.size());
+            parsedRowSizes.add(lineParser.size());
+            BracketIndex.addRow(data, pos, parsedWords, parsedWords.size() - lineParser.size(), parsedWords.size(),
+                    parsedBrackets);
 
             boolean lastCommentContinuous = dataInWords.isCommentContinuous(i + 1);
             dataInWords.setCommentContinuous(i + 1, lineParser.isCommentContinuous());
+            if (i + 1 >= parsedRows) {
+                parsedCommentContinuous = lineParser.isCommentContinuous();
+            }
 
             if (!parseAll && !forceEnd && endRow <= i && lineParser.isCommentContinuous() == lastCommentContinuous) {
                 end = i;
@@ -175,8 +284,105 @@ class Parser {
 
             pos += length.get(i) + 1;
             end = i;
+
+            if (!forceEnd && endRow <= i && syncEndRow <= i + 1 && i + 1 < parsedRows) {
+                parsedRows = i + 1;
+                parsedCommentContinuous = lineParser.isCommentContinuous();
+                break;
+            }
         }
         dataInWords.clearDataLines(row, end);
-        dataInWords.setAll(row, res, resLength);
+        dataInWords.setAll(row, parsedWords, parsedRowSizes, parsedBrackets);
+        doc.rowsChanged(row, end);
+
+        if (forceEnd) {
+            parsedRows = Math.max(parsedRows, end + 1);
+        }
+    }
+
+    // Background parsing
+
+    // next rows after parsed ones, it is created in EDT
+    public Pass createPass(int rows) {
+        return new Pass(Math.max(0, Math.min(rows, length.size() - parsedRows)));
+    }
+
+    // returns false if lines were changed after the pass was created
+    public boolean publish(Pass pass) {
+        if (pass.version != version || pass.startRow != parsedRows || !pass.isDone || pass.lineLengths.length == 0) {
+            return false;
+        }
+
+        dataInWords.updateSize(length.size());
+        int end = pass.startRow + pass.lineLengths.length - 1;
+        dataInWords.clearDataLines(pass.startRow, end);
+        dataInWords.setAll(pass.startRow, pass.words, pass.rowSizes, pass.rowBrackets);
+        doc.rowsChanged(pass.startRow, end);
+        for (int i = 0; i < pass.commentContinuous.length; i++) {
+            dataInWords.setCommentContinuous(pass.startRow + i + 1, pass.commentContinuous[i]);
+        }
+
+        parsedRows = end + 1;
+        parsedCommentContinuous = pass.commentContinuous[pass.commentContinuous.length - 1];
+        lightPendingPair();
+        return true;
+    }
+
+    // Parses rows from a snapshot of the text in fork/join pool, it can be run in another thread
+    class Pass implements Runnable {
+        private final int version;
+        private final int startRow;
+        private final int startPos;
+        private final int endPos;
+        private final boolean startCommentContinuous;
+        private final int[] lineLengths;
+        private final TextStorage text;
+        private final FileType fileType;
+        private WordsArrayList words;
+        private TIntArrayList rowSizes;
+        private TIntArrayList rowBrackets;
+        private boolean[] commentContinuous;
+        private boolean isDone;
+
+        private Pass(int rows) {
+            version = Parser.this.version;
+            startRow = Parser.this.parsedRows;
+            startPos = doc.getPos(startRow, 0);
+            startCommentContinuous = parsedCommentContinuous;
+            lineLengths = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                lineLengths[i] = length.get(startRow + i);
+            }
+            endPos = rows == 0 ? startPos : doc.getPos(startRow + rows - 1, lineLengths[rows - 1]);
+            text = data.snapshot();
+            fileType = Parser.this.fileType;
+            isDone = false;
+        }
+
+        public void run() {
+            if (lineLengths.length == 0) {
+                return;
+            }
+
+            // lines are changed, result will not be published
+            String lines = text.substring(startPos, endPos);
+            ParallelTokenizer tokenizer = new ParallelTokenizer(lines, lineLengths, fileType,
+                    () -> version != Parser.this.version);
+            if (tokenizer.tokenize(startCommentContinuous)) {
+                words = tokenizer.getWords();
+                rowSizes = tokenizer.getRowSizes();
+                commentContinuous = tokenizer.getCommentContinuous();
+
+                rowBrackets = new TIntArrayList(lineLengths.length * BracketIndex.ROW_INTS);
+                int pos = 0;
+                int word = 0;
+                for (int i = 0; i < lineLengths.length; i++) {
+                    BracketIndex.addRow(lines, pos, words, word, word + rowSizes.get(i), rowBrackets);
+                    pos += lineLengths[i] + 1;
+                    word += rowSizes.get(i);
+                }
+                isDone = true;
+            }
+        }
     }
 }
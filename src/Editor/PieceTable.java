@@ -0,0 +1,300 @@
+package Editor;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+// Original read-only buffer + append-only add buffer.
+// Text is a sequence of pieces, every piece is an interval of one of the buffers,
+// so an edit costs O(pieces) instead of O(length)
+class PieceTable implements TextStorage {
+
+    private static final byte ORIGINAL = 0;
+    private static final byte ADD = 1;
+
+    private final TByteArrayList source;
+    private final TIntArrayList start;
+    private final TIntArrayList length;
+    private CharSequence original;
+    private char[] add;
+    private int addSize;
+    private boolean addShared; // add buffer is used by a snapshot
+    private int size;
+
+    // last found piece, sequential access doesn't walk pieces from the beginning
+    private int lastPiece;
+    private int lastPieceOffset;
+
+    PieceTable() {
+        this("");
+    }
+
+    PieceTable(CharSequence original) {
+        source = new TByteArrayList();
+        start = new TIntArrayList();
+        length = new TIntArrayList();
+        reset(original);
+    }
+
+    private PieceTable(PieceTable table) {
+        source = new TByteArrayList(table.source.toArray());
+        start = new TIntArrayList(table.start.toArray());
+        length = new TIntArrayList(table.length.toArray());
+        original = table.original instanceof MappedFile ? ((MappedFile) table.original).view() : table.original;
+        add = table.add;
+        addSize = table.addSize;
+        addShared = true;
+        size = table.size;
+    }
+
+    public void reset(CharSequence text) {
+        original = text;
+        add = new char[16];
+        addSize = 0;
+        addShared = false;
+        size = text.length();
+
+        source.clear();
+        start.clear();
+        length.clear();
+        if (size > 0) {
+            source.add(ORIGINAL);
+            start.add(0);
+            length.add(size);
+        }
+
+        lastPiece = 0;
+        lastPieceOffset = 0;
+    }
+
+    public int length() {
+        return size;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + size);
+        }
+
+        int piece = findPiece(index);
+        int bufferPos = start.get(piece) + index - lastPieceOffset;
+        return source.get(piece) == ADD ? add[bufferPos] : original.charAt(bufferPos);
+    }
+
+    public void insert(int pos, CharSequence s) {
+        checkInterval(pos, pos);
+        int len = s.length();
+        if (len == 0) {
+            return;
+        }
+
+        int addStart = appendToAddBuffer(s);
+
+        int piece;
+        if (pos == size) {
+            piece = length.size();
+        } else {
+            piece = findPiece(pos);
+            if (pos > lastPieceOffset) {
+                split(piece, pos - lastPieceOffset);
+                piece++;
+            }
+        }
+
+        // typing continues the previous insertion
+        if (piece > 0 && source.get(piece - 1) == ADD && start.get(piece - 1) + length.get(piece - 1) == addStart) {
+            lastPiece = piece - 1;
+            lastPieceOffset = pos - length.get(piece - 1);
+            length.set(piece - 1, length.get(piece - 1) + len);
+        } else {
+            source.insert(piece, ADD);
+            start.insert(piece, addStart);
+            length.insert(piece, len);
+            lastPiece = piece;
+            lastPieceOffset = pos;
+        }
+
+        size += len;
+    }
+
+    // the original text can be appended without copying, if it has grown after reset
+    public void append(CharSequence text, int from, int to) {
+        if (text != original) {
+            insert(size, text.subSequence(from, to));
+            return;
+        }
+        if (from == to) {
+            return;
+        }
+
+        int last = length.size() - 1;
+        if (last >= 0 && source.get(last) == ORIGINAL && start.get(last) + length.get(last) == from) {
+            length.set(last, length.get(last) + to - from);
+        } else {
+            source.add(ORIGINAL);
+            start.add(from);
+            length.add(to - from);
+        }
+        size += to - from;
+    }
+
+    public void delete(int from, int to) {
+        checkInterval(from, to);
+        if (from == to) {
+            return;
+        }
+
+        int piece = findPiece(from);
+        if (from > lastPieceOffset) {
+            split(piece, from - lastPieceOffset);
+            piece++;
+        }
+
+        int remaining = to - from;
+        int count = 0;
+        while (remaining > 0 && remaining >= length.get(piece + count)) {
+            remaining -= length.get(piece + count);
+            count++;
+        }
+        if (remaining > 0) {
+            start.set(piece + count, start.get(piece + count) + remaining);
+            length.set(piece + count, length.get(piece + count) - remaining);
+        }
+
+        source.remove(piece, count);
+        start.remove(piece, count);
+        length.remove(piece, count);
+        size -= to - from;
+
+        if (piece > 0) {
+            lastPiece = piece - 1;
+            lastPieceOffset = from - length.get(piece - 1);
+            mergeWithNext(piece - 1);
+        } else {
+            lastPiece = 0;
+            lastPieceOffset = 0;
+        }
+    }
+
+    public String substring(int from, int to) {
+        char[] res = new char[to - from];
+        getChars(from, to, res, 0);
+        return new String(res);
+    }
+
+    public void getChars(int from, int to, char[] dst, int dstBegin) {
+        checkInterval(from, to);
+        if (from == to) {
+            return;
+        }
+
+        int piece = findPiece(from);
+        int offset = lastPieceOffset;
+        int inPiece = from - offset;
+        while (from < to) {
+            int n = Math.min(length.get(piece) - inPiece, to - from);
+            int bufferPos = start.get(piece) + inPiece;
+            if (source.get(piece) == ADD) {
+                System.arraycopy(add, bufferPos, dst, dstBegin, n);
+            } else {
+                copyOriginal(bufferPos, bufferPos + n, dst, dstBegin);
+            }
+
+            from += n;
+            dstBegin += n;
+            if (from < to) {
+                offset += length.get(piece);
+                piece++;
+                inPiece = 0;
+            }
+        }
+
+        lastPiece = piece;
+        lastPieceOffset = offset;
+    }
+
+    public TextStorage snapshot() {
+        return new PieceTable(this);
+    }
+
+    public String toString() {
+        return substring(0, size);
+    }
+
+    int pieceCount() {
+        return length.size();
+    }
+
+    // index < size
+    private int findPiece(int index) {
+        int piece = lastPiece;
+        int offset = lastPieceOffset;
+        if (piece >= length.size()) {
+            piece = 0;
+            offset = 0;
+        }
+
+        while (index < offset) {
+            piece--;
+            offset -= length.get(piece);
+        }
+        while (index >= offset + length.get(piece)) {
+            offset += length.get(piece);
+            piece++;
+        }
+
+        lastPiece = piece;
+        lastPieceOffset = offset;
+        return piece;
+    }
+
+    private void split(int piece, int at) {
+        source.insert(piece + 1, source.get(piece));
+        start.insert(piece + 1, start.get(piece) + at);
+        length.insert(piece + 1, length.get(piece) - at);
+        length.set(piece, at);
+    }
+
+    private void mergeWithNext(int piece) {
+        if (piece + 1 < length.size() && source.get(piece) == source.get(piece + 1) &&
+                start.get(piece) + length.get(piece) == start.get(piece + 1)) {
+            length.set(piece, length.get(piece) + length.get(piece + 1));
+            source.removeAt(piece + 1);
+            start.removeAt(piece + 1);
+            length.removeAt(piece + 1);
+        }
+    }
+
+    private int appendToAddBuffer(CharSequence s) {
+        int len = s.length();
+        if (addSize + len > add.length || addShared) {
+            add = Arrays.copyOf(add, Math.max(add.length * 2, addSize + len));
+            addShared = false;
+        }
+
+        TextStorage.getChars(s, 0, len, add, addSize);
+        addSize += len;
+        return addSize - len;
+    }
+
+    private void copyOriginal(int from, int to, char[] dst, int dstBegin) {
+        if (original instanceof String) {
+            ((String) original).getChars(from, to, dst, dstBegin);
+        } else if (original instanceof CharBuffer && ((CharBuffer) original).hasArray()) {
+            CharBuffer buffer = (CharBuffer) original;
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position() + from, dst, dstBegin, to - from);
+        } else {
+            for (int i = from; i < to; i++) {
+                dst[dstBegin++] = original.charAt(i);
+            }
+        }
+    }
+
+    private void checkInterval(int from, int to) {
+        if (from < 0 || from > to || to > size) {
+            throw new IndexOutOfBoundsException("Interval: [" + from + ", " + to + "), length: " + size);
+        }
+    }
+}
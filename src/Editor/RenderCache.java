@@ -0,0 +1,110 @@
+package Editor;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Drawn rows: every row is an opaque image of its band with background, selection and text.
+// Glyphs of neighbour rows can cross the band, so they are drawn into it too, and an image is kept with
+// versions of the row and its neighbours in the viewport. Images are drawn again only when one of these
+// rows is changed, the row is scrolled horizontally or selection on it is changed; all images are dropped
+// when font, rendering hints or size of the band are changed
+class RenderCache {
+
+    private final TIntObjectHashMap<Line> lines;
+    private Font font;
+    private RenderingHints hints;
+    private GraphicsConfiguration configuration;
+    private int width;
+    private int height;
+    private int versions; // number of drawn images
+
+    RenderCache() {
+        lines = new TIntObjectHashMap<>();
+    }
+
+    public void setUp(Graphics2D graphics2D, int width, int height) {
+        Font font = graphics2D.getFont();
+        RenderingHints hints = graphics2D.getRenderingHints();
+        GraphicsConfiguration configuration = graphics2D.getDeviceConfiguration();
+        if (!font.equals(this.font) || !hints.equals(this.hints) || configuration != this.configuration ||
+                width != this.width || height != this.height) {
+            this.font = font;
+            this.hints = hints;
+            this.configuration = configuration;
+            this.width = width;
+            this.height = height;
+            lines.clear();
+        }
+    }
+
+    // hints of the screen, images are drawn with them
+    public RenderingHints getHints() {
+        return hints;
+    }
+
+    // null if the row isn't drawn for these rows of viewport, its horizontal offset and
+    // selection [selectionStart, selectionEnd) in pixels
+    public BufferedImage get(Viewport viewport, int row, int selectionStart, int selectionEnd) {
+        Line line = lines.get(row);
+        if (line == null || line.widthOffset != viewport.getWidthOffset() ||
+                line.previousVersion != viewport.getRow(row - 1).getVersion() ||
+                line.rowVersion != viewport.getRow(row).getVersion() ||
+                line.nextVersion != viewport.getRow(row + 1).getVersion() ||
+                line.selectionStart != selectionStart || line.selectionEnd != selectionEnd) {
+            return null;
+        }
+        return line.image;
+    }
+
+    // image for the row, it must be drawn fully by the caller
+    public BufferedImage put(Viewport viewport, int row, int selectionStart, int selectionEnd) {
+        Line line = lines.get(row);
+        if (line == null) {
+            line = new Line();
+            lines.put(row, line);
+        }
+        line.widthOffset = viewport.getWidthOffset();
+        line.previousVersion = viewport.getRow(row - 1).getVersion();
+        line.rowVersion = viewport.getRow(row).getVersion();
+        line.nextVersion = viewport.getRow(row + 1).getVersion();
+        line.selectionStart = selectionStart;
+        line.selectionEnd = selectionEnd;
+        line.version = ++versions;
+
+        if (line.image == null) {
+            line.image = configuration != null ? configuration.createCompatibleImage(width, height) :
+                    new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        return line.image;
+    }
+
+    // every drawing of an image gets a new version, 0 if the row has no image
+    public int getVersion(int row) {
+        Line line = lines.get(row);
+        return line == null ? 0 : line.version;
+    }
+
+    // only rows [startRow, endRow) are kept, when there are much more rows in cache
+    public void trim(int startRow, int endRow) {
+        if (lines.size() > 2 * (endRow - startRow)) {
+            lines.retainEntries((row, line) -> row >= startRow && row < endRow);
+        }
+    }
+
+    public void clear() {
+        lines.clear();
+    }
+
+    private static class Line {
+        int widthOffset;
+        int previousVersion; // versions of rows of the viewport
+        int rowVersion;
+        int nextVersion;
+        int selectionStart;
+        int selectionEnd;
+        int version;
+        BufferedImage image;
+    }
+}
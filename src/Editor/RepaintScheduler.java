@@ -0,0 +1,118 @@
+package Editor;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import javax.swing.*;
+
+// Coalesces repaint requests of ETextArea into at most one repaint per frame. Only parts which differ
+// from the ones on the screen are repainted: changed rows, rows where selection is changed, words which
+// only changed color (lighted brackets) and cells of the old and new caret. After scrolling the whole
+// area is repainted
+class RepaintScheduler implements EDocument.RowsListener {
+
+    private static final int FRAME_DELAY = 16; // ms, a frame at 60 Hz
+
+    private final ETextArea area;
+    private final EDocument doc;
+    private final Timer timer;
+    private final TIntArrayList dirtyColumns; // row, start and end column of every word with changed color
+    private int dirtyStartRow; // rows changed since the last repaint, start > end if there are no ones
+    private int dirtyEndRow;
+
+    // state of the document after the last repaint
+    private boolean isPainted;
+    private int heightOffset;
+    private int widthOffset;
+    private int caretRow;
+    private int caretColumn;
+    private int selectionStartRow; // -1 if there is no selection
+    private int selectionEndRow;
+
+    RepaintScheduler(ETextArea area, EDocument doc) {
+        this.area = area;
+        this.doc = doc;
+        timer = new Timer(FRAME_DELAY, e -> repaint());
+        timer.setRepeats(false);
+        dirtyStartRow = Integer.MAX_VALUE;
+        dirtyEndRow = Integer.MIN_VALUE;
+        dirtyColumns = new TIntArrayList();
+        isPainted = false;
+    }
+
+    // EDT
+    public void schedule() {
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    // EDT, endRow is Integer.MAX_VALUE if all rows after startRow are changed
+    @Override
+    public void rowsChanged(int startRow, int endRow) {
+        addDirtyRows(startRow, endRow);
+        schedule();
+    }
+
+    // EDT
+    @Override
+    public void columnsChanged(int row, int startColumn, int endColumn) {
+        dirtyColumns.add(row);
+        dirtyColumns.add(startColumn);
+        dirtyColumns.add(endColumn);
+        schedule();
+    }
+
+    private void addDirtyRows(int startRow, int endRow) {
+        dirtyStartRow = Math.min(dirtyStartRow, startRow);
+        dirtyEndRow = Math.max(dirtyEndRow, endRow);
+    }
+
+    // state is compared with the last published snapshot, the one paint will draw
+    private void repaint() {
+        Viewport viewport = doc.getViewport();
+        int[] selection = viewport.getSelectionInterval();
+        int newSelectionStartRow = selection != null ? selection[1] : -1;
+        int newSelectionEndRow = selection != null ? selection[3] : -1;
+
+        if (!isPainted || heightOffset != viewport.getHeightOffset() ||
+                widthOffset != viewport.getWidthOffset()) {
+            area.repaint();
+        } else {
+            if (selectionStartRow >= 0 && newSelectionStartRow >= 0) {
+                // rows between the ones of the old and new ends are selected in both
+                addDirtyRows(Math.min(selectionStartRow, newSelectionStartRow),
+                        Math.max(selectionStartRow, newSelectionStartRow));
+                addDirtyRows(Math.min(selectionEndRow, newSelectionEndRow),
+                        Math.max(selectionEndRow, newSelectionEndRow));
+            } else if (selectionStartRow >= 0) {
+                addDirtyRows(selectionStartRow, selectionEndRow);
+            } else if (newSelectionStartRow >= 0) {
+                addDirtyRows(newSelectionStartRow, newSelectionEndRow);
+            }
+
+            // glyphs cross bands of neighbours
+            if (dirtyStartRow <= dirtyEndRow) {
+                area.repaintRows(dirtyStartRow - 1, dirtyEndRow == Integer.MAX_VALUE ? dirtyEndRow : dirtyEndRow + 1);
+            }
+            for (int i = 0; i < dirtyColumns.size(); i += 3) {
+                area.repaintColumns(dirtyColumns.get(i), dirtyColumns.get(i + 1), dirtyColumns.get(i + 2));
+            }
+
+            if (caretRow != viewport.getCaretRow() || caretColumn != viewport.getCaretColumn()) {
+                area.repaintCaret(caretRow, caretColumn);
+                area.repaintCaret(viewport.getCaretRow(), viewport.getCaretColumn());
+            }
+        }
+
+        isPainted = true;
+        heightOffset = viewport.getHeightOffset();
+        widthOffset = viewport.getWidthOffset();
+        caretRow = viewport.getCaretRow();
+        caretColumn = viewport.getCaretColumn();
+        selectionStartRow = newSelectionStartRow;
+        selectionEndRow = newSelectionEndRow;
+        dirtyStartRow = Integer.MAX_VALUE;
+        dirtyEndRow = Integer.MIN_VALUE;
+        dirtyColumns.resetQuick();
+    }
+}
@@ -0,0 +1,341 @@
+package Editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Balanced B-tree of chunks: insert, delete, charAt and substring are O(log n).
+// Nodes are never changed after creation, an edit copies only the path to the changed leaf.
+// All text is copied into leaves, so it isn't meant for big files opened as MappedFile
+class Rope implements TextStorage {
+
+    private static final int MAX_LEAF = 1024;
+    private static final int MAX_CHILDREN = 32;
+
+    private Node root;
+
+    // last found leaf, sequential access doesn't descend from the root
+    private Leaf lastLeaf;
+    private int lastLeafOffset;
+
+    Rope() {
+        this("");
+    }
+
+    Rope(CharSequence text) {
+        reset(text);
+    }
+
+    private Rope(Node root) {
+        this.root = root;
+    }
+
+    public void reset(CharSequence text) {
+        int len = text.length();
+        int count = (len + MAX_LEAF - 1) / MAX_LEAF;
+        List<Node> leaves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = (int) ((long) len * i / count);
+            int to = (int) ((long) len * (i + 1) / count);
+            char[] chars = new char[to - from];
+            TextStorage.getChars(text, from, to, chars, 0);
+            leaves.add(new Leaf(chars));
+        }
+
+        setRoot(leaves);
+    }
+
+    public int length() {
+        return root.length;
+    }
+
+    public char charAt(int index) {
+        if (index < 0 || index >= root.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + root.length);
+        }
+
+        if (lastLeaf == null || index < lastLeafOffset || index >= lastLeafOffset + lastLeaf.length) {
+            Node node = root;
+            int offset = 0;
+            while (node instanceof Inner) {
+                for (Node child : ((Inner) node).children) {
+                    if (index < offset + child.length) {
+                        node = child;
+                        break;
+                    }
+                    offset += child.length;
+                }
+            }
+            lastLeaf = (Leaf) node;
+            lastLeafOffset = offset;
+        }
+
+        return lastLeaf.chars[index - lastLeafOffset];
+    }
+
+    public void insert(int pos, CharSequence s) {
+        checkInterval(pos, pos);
+        if (s.length() == 0) {
+            return;
+        }
+
+        char[] chars = new char[s.length()];
+        TextStorage.getChars(s, 0, chars.length, chars, 0);
+        setRoot(insert(root, pos, chars));
+    }
+
+    // text[from, to) is copied without subSequence
+    public void append(CharSequence text, int from, int to) {
+        if (from == to) {
+            return;
+        }
+
+        char[] chars = new char[to - from];
+        TextStorage.getChars(text, from, to, chars, 0);
+        setRoot(insert(root, root.length, chars));
+    }
+
+    public void delete(int from, int to) {
+        checkInterval(from, to);
+        if (from == to) {
+            return;
+        }
+
+        Node res = delete(root, from, to);
+        while (res instanceof Inner && ((Inner) res).children.length == 1) {
+            res = ((Inner) res).children[0];
+        }
+
+        root = res == null ? new Leaf(new char[0]) : res;
+        lastLeaf = null;
+    }
+
+    public String substring(int from, int to) {
+        char[] res = new char[to - from];
+        getChars(from, to, res, 0);
+        return new String(res);
+    }
+
+    public void getChars(int from, int to, char[] dst, int dstBegin) {
+        checkInterval(from, to);
+        if (from < to) {
+            getChars(root, from, to, dst, dstBegin);
+        }
+    }
+
+    // nodes are immutable, so they are shared
+    public TextStorage snapshot() {
+        return new Rope(root);
+    }
+
+    public String toString() {
+        return substring(0, length());
+    }
+
+    int height() {
+        int res = 0;
+        for (Node node = root; node instanceof Inner; node = ((Inner) node).children[0]) {
+            res++;
+        }
+        return res;
+    }
+
+    private void setRoot(List<Node> nodes) {
+        while (nodes.size() > 1) {
+            nodes = group(nodes);
+        }
+
+        root = nodes.isEmpty() ? new Leaf(new char[0]) : nodes.get(0);
+        lastLeaf = null;
+    }
+
+    // Tree operations, every returned list contains nodes of the same height as the argument
+
+    private static List<Node> insert(Node node, int pos, char[] s) {
+        if (node instanceof Leaf) {
+            char[] chars = ((Leaf) node).chars;
+            char[] res = new char[chars.length + s.length];
+            System.arraycopy(chars, 0, res, 0, pos);
+            System.arraycopy(s, 0, res, pos, s.length);
+            System.arraycopy(chars, pos, res, pos + s.length, chars.length - pos);
+            return splitLeaf(res);
+        }
+
+        Node[] children = ((Inner) node).children;
+        int i = 0;
+        while (i < children.length - 1 && pos > children[i].length) {
+            pos -= children[i].length;
+            i++;
+        }
+
+        List<Node> res = new ArrayList<>(children.length + 1);
+        res.addAll(Arrays.asList(children).subList(0, i));
+        res.addAll(insert(children[i], pos, s));
+        res.addAll(Arrays.asList(children).subList(i + 1, children.length));
+        return group(res);
+    }
+
+    // [from, to) is not empty and inside of node, returns null if node is deleted
+    private static Node delete(Node node, int from, int to) {
+        if (from == 0 && to == node.length) {
+            return null;
+        }
+
+        if (node instanceof Leaf) {
+            char[] chars = ((Leaf) node).chars;
+            char[] res = new char[chars.length - (to - from)];
+            System.arraycopy(chars, 0, res, 0, from);
+            System.arraycopy(chars, to, res, from, chars.length - to);
+            return new Leaf(res);
+        }
+
+        Node[] children = ((Inner) node).children;
+        List<Node> res = new ArrayList<>(children.length);
+        int offset = 0;
+        for (Node child : children) {
+            int childFrom = Math.max(from - offset, 0);
+            int childTo = Math.min(to - offset, child.length);
+            if (childFrom < childTo) {
+                Node newChild = delete(child, childFrom, childTo);
+                if (newChild != null) {
+                    res.add(newChild);
+                }
+            } else {
+                res.add(child);
+            }
+            offset += child.length;
+        }
+
+        mergeUnderfull(res);
+        return new Inner(res.toArray(new Node[res.size()]));
+    }
+
+    // merge underfull nodes with neighbours
+    private static void mergeUnderfull(List<Node> nodes) {
+        int i = 0;
+        while (i < nodes.size() && nodes.size() > 1) {
+            if (!isUnderfull(nodes.get(i))) {
+                i++;
+                continue;
+            }
+
+            int left = i + 1 < nodes.size() ? i : i - 1;
+            List<Node> merged = concat(nodes.get(left), nodes.get(left + 1));
+            nodes.remove(left + 1);
+            nodes.remove(left);
+            nodes.addAll(left, merged);
+            i = merged.size() == 1 ? left : left + 2;
+        }
+    }
+
+    private static List<Node> concat(Node first, Node second) {
+        if (first instanceof Leaf) {
+            char[] firstChars = ((Leaf) first).chars;
+            char[] secondChars = ((Leaf) second).chars;
+            char[] res = Arrays.copyOf(firstChars, firstChars.length + secondChars.length);
+            System.arraycopy(secondChars, 0, res, firstChars.length, secondChars.length);
+            return splitLeaf(res);
+        }
+
+        List<Node> res = new ArrayList<>();
+        res.addAll(Arrays.asList(((Inner) first).children));
+        res.addAll(Arrays.asList(((Inner) second).children));
+        mergeUnderfull(res);
+        return group(res);
+    }
+
+    private static boolean isUnderfull(Node node) {
+        if (node instanceof Leaf) {
+            return node.length < MAX_LEAF / 2;
+        }
+        return ((Inner) node).children.length < MAX_CHILDREN / 2;
+    }
+
+    private static List<Node> splitLeaf(char[] chars) {
+        List<Node> res = new ArrayList<>();
+        if (chars.length <= MAX_LEAF) {
+            res.add(new Leaf(chars));
+            return res;
+        }
+
+        int count = (chars.length + MAX_LEAF - 1) / MAX_LEAF;
+        for (int i = 0; i < count; i++) {
+            int from = (int) ((long) chars.length * i / count);
+            int to = (int) ((long) chars.length * (i + 1) / count);
+            res.add(new Leaf(Arrays.copyOfRange(chars, from, to)));
+        }
+        return res;
+    }
+
+    private static List<Node> group(List<Node> nodes) {
+        int count = (nodes.size() + MAX_CHILDREN - 1) / MAX_CHILDREN;
+        List<Node> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = nodes.size() * i / count;
+            int to = nodes.size() * (i + 1) / count;
+            res.add(new Inner(nodes.subList(from, to).toArray(new Node[to - from])));
+        }
+        return res;
+    }
+
+    private static void getChars(Node node, int from, int to, char[] dst, int dstBegin) {
+        if (node instanceof Leaf) {
+            System.arraycopy(((Leaf) node).chars, from, dst, dstBegin, to - from);
+            return;
+        }
+
+        int offset = 0;
+        for (Node child : ((Inner) node).children) {
+            int childFrom = Math.max(from - offset, 0);
+            int childTo = Math.min(to - offset, child.length);
+            if (childFrom < childTo) {
+                getChars(child, childFrom, childTo, dst, dstBegin + offset + childFrom - from);
+            }
+
+            offset += child.length;
+            if (offset >= to) {
+                break;
+            }
+        }
+    }
+
+    private void checkInterval(int from, int to) {
+        if (from < 0 || from > to || to > root.length) {
+            throw new IndexOutOfBoundsException("Interval: [" + from + ", " + to + "), length: " + root.length);
+        }
+    }
+
+    private static abstract class Node {
+        final int length;
+
+        Node(int length) {
+            this.length = length;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        final char[] chars;
+
+        Leaf(char[] chars) {
+            super(chars.length);
+            this.chars = chars;
+        }
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children;
+
+        Inner(Node[] children) {
+            super(sumLength(children));
+            this.children = children;
+        }
+
+        private static int sumLength(Node[] children) {
+            int res = 0;
+            for (Node child : children) {
+                res += child.length;
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package Editor;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TCharIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.awt.*;
+
+// Measured metrics of the font and x of columns of rows.
+// Advances of chars are cached: ASCII in a table, the rest in a map. Row where every char has the width
+// of a cell (ASCII in a monospaced font) is uniform and x of its column is column * cellWidth, for other
+// rows (wide or zero-width chars) x of columns are cumulative advances. They are cached by versions of
+// rows of the viewport, a changed row has a new version, so the cache isn't invalidated
+class TextMetrics {
+
+    private static final int[] UNIFORM = new int[0];
+    private static final int MAX_CACHED_ROWS = 1 << 12;
+
+    private final FontMetrics fontMetrics;
+    private final int cellWidth;
+    private final int lineHeight;
+    private final int ascent;
+    private final int[] asciiAdvances;
+    private final TCharIntHashMap advances;
+    private final TIntObjectHashMap<int[]> rows; // by version of row: x of columns 0..length of row or UNIFORM
+
+    TextMetrics(FontMetrics fontMetrics) {
+        this.fontMetrics = fontMetrics;
+        cellWidth = Math.max(1, fontMetrics.charWidth('m'));
+        lineHeight = Math.max(1, fontMetrics.getHeight());
+        ascent = fontMetrics.getAscent();
+
+        asciiAdvances = new int[128];
+        for (char ch = 0; ch < asciiAdvances.length; ch++) {
+            asciiAdvances[ch] = fontMetrics.charWidth(ch);
+        }
+        advances = new TCharIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, (char) 0, -1);
+        rows = new TIntObjectHashMap<>();
+    }
+
+    public int getCellWidth() {
+        return cellWidth;
+    }
+
+    public int getLineHeight() {
+        return lineHeight;
+    }
+
+    public int getAscent() {
+        return ascent;
+    }
+
+    public int getAdvance(char ch) {
+        if (ch < asciiAdvances.length) {
+            return asciiAdvances[ch];
+        }
+
+        int advance = advances.get(ch);
+        if (advance < 0) {
+            advance = fontMetrics.charWidth(ch);
+            advances.put(ch, advance);
+        }
+        return advance;
+    }
+
+    // x of column of row from the start of the row, columns after the end of the row have width of a cell
+    public int getX(Viewport.Row row, int column) {
+        int[] offsets = getOffsets(row);
+        if (offsets == UNIFORM) {
+            return column * cellWidth;
+        }
+
+        int rowLength = offsets.length - 1;
+        if (column <= rowLength) {
+            return offsets[Math.max(column, 0)];
+        }
+        return offsets[rowLength] + (column - rowLength) * cellWidth;
+    }
+
+    // column of row such that x is in [getX(column), getX(column + 1)), for zero-width chars it is the last one
+    public int getColumn(Viewport.Row row, int x) {
+        int[] offsets = getOffsets(row);
+        if (offsets == UNIFORM || x < 0) {
+            return x / cellWidth;
+        }
+
+        int rowLength = offsets.length - 1;
+        if (x >= offsets[rowLength]) {
+            return rowLength + (x - offsets[rowLength]) / cellWidth;
+        }
+
+        // the last column with offset <= x
+        int left = 0;
+        int right = rowLength;
+        while (right - left > 1) {
+            int middle = (left + right) >>> 1;
+            if (offsets[middle] <= x) {
+                left = middle;
+            } else {
+                right = middle;
+            }
+        }
+        return left;
+    }
+
+    private int[] getOffsets(Viewport.Row row) {
+        int[] offsets = rows.get(row.getVersion());
+        if (offsets != null) {
+            return offsets;
+        }
+
+        char[] chars = row.getChars();
+        offsets = UNIFORM;
+        for (int i = 0; i < chars.length; i++) {
+            if (getAdvance(chars[i]) != cellWidth) {
+                offsets = new int[chars.length + 1];
+                for (int j = 0; j < chars.length; j++) {
+                    offsets[j + 1] = offsets[j] + getAdvance(chars[j]);
+                }
+                break;
+            }
+        }
+
+        if (rows.size() >= MAX_CACHED_ROWS) {
+            rows.clear();
+        }
+        rows.put(row.getVersion(), offsets);
+        return offsets;
+    }
+}
@@ -0,0 +1,100 @@
+package Editor;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TextMetricsTest extends Assert {
+
+    private static final String chars = "abc {}()mi\u4e2d\u0301\u00e9";
+    private Random rand;
+
+    @Before
+    public void init() {
+        rand = new Random();
+    }
+
+    private static FontMetrics getFontMetrics(String name) {
+        return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics()
+                .getFontMetrics(new Font(name, Font.PLAIN, 14));
+    }
+
+    private String randomRow() {
+        StringBuilder row = new StringBuilder();
+        boolean ascii = rand.nextBoolean();
+        for (int i = rand.nextInt(30); i > 0; i--) {
+            row.append(chars.charAt(rand.nextInt(ascii ? 10 : chars.length())));
+        }
+        return row.toString();
+    }
+
+    private static int[] naiveOffsets(FontMetrics fontMetrics, String row) {
+        int[] res = new int[row.length() + 1];
+        for (int i = 0; i < row.length(); i++) {
+            res[i + 1] = res[i] + fontMetrics.charWidth(row.charAt(i));
+        }
+        return res;
+    }
+
+    private static Viewport.Row createRow(int version, String s) {
+        return new Viewport.Row(version, s.toCharArray(), new int[0], new int[0], new Word.Type[0]);
+    }
+
+    private void checkRows(TextMetrics metrics, FontMetrics fontMetrics, List<Viewport.Row> rows) {
+        int cellWidth = metrics.getCellWidth();
+        for (Viewport.Row row : rows) {
+            int[] offsets = naiveOffsets(fontMetrics, new String(row.getChars()));
+            int rowLength = offsets.length - 1;
+            for (int column = 0; column <= rowLength + 2; column++) {
+                int x = column <= rowLength ? offsets[column] : offsets[rowLength] + (column - rowLength) * cellWidth;
+                assertEquals(x, metrics.getX(row, column));
+
+                int hit = metrics.getColumn(row, x);
+                assertEquals(x, metrics.getX(row, hit));
+                assertTrue(hit >= column);
+                if (x > 0) {
+                    assertTrue(metrics.getColumn(row, x - 1) < column);
+                }
+            }
+        }
+    }
+
+    private void testFont(String name) {
+        FontMetrics fontMetrics = getFontMetrics(name);
+        int versions = 0;
+        List<Viewport.Row> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(createRow(++versions, randomRow()));
+        }
+
+        TextMetrics metrics = new TextMetrics(fontMetrics);
+        assertEquals(fontMetrics.getHeight(), metrics.getLineHeight());
+        assertEquals(fontMetrics.getAscent(), metrics.getAscent());
+        for (char ch : chars.toCharArray()) {
+            assertEquals(fontMetrics.charWidth(ch), metrics.getAdvance(ch));
+        }
+        checkRows(metrics, fontMetrics, rows);
+
+        // changed rows get new versions
+        for (int i = 0; i < 20; i++) {
+            rows.set(rand.nextInt(rows.size()), createRow(++versions, randomRow()));
+        }
+        checkRows(metrics, fontMetrics, rows);
+    }
+
+    @Test
+    public void testMonospacedEqualsNaiveSum() {
+        testFont("MONOSPACED");
+    }
+
+    @Test
+    public void testProportionalEqualsNaiveSum() {
+        testFont("SansSerif");
+    }
+}
@@ -0,0 +1,48 @@
+package Editor;
+
+import java.nio.CharBuffer;
+
+// Text of the document. Lines are separated by '\n'
+interface TextStorage extends CharSequence {
+
+    void reset(CharSequence text);
+
+    void insert(int pos, CharSequence s);
+
+    void delete(int start, int end); // delete interval [ )
+
+    // append text[start, end)
+    default void append(CharSequence text, int start, int end) {
+        insert(length(), text.subSequence(start, end));
+    }
+
+    String substring(int start, int end);
+
+    void getChars(int start, int end, char[] dst, int dstBegin);
+
+    // independent copy, it can be read from another thread while this storage is changed
+    TextStorage snapshot();
+
+    default CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    // copies text[start, end) to dst, in bulk if text supports it, else char by char
+    static void getChars(CharSequence text, int start, int end, char[] dst, int dstBegin) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, dst, dstBegin);
+        } else if (text instanceof TextStorage) {
+            ((TextStorage) text).getChars(start, end, dst, dstBegin);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dst, dstBegin);
+        } else if (text instanceof CharBuffer) {
+            CharBuffer buffer = ((CharBuffer) text).duplicate();
+            buffer.position(buffer.position() + start);
+            buffer.get(dst, dstBegin, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                dst[dstBegin++] = text.charAt(i);
+            }
+        }
+    }
+}
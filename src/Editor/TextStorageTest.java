@@ -0,0 +1,206 @@
+package Editor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.util.Random;
+
+public class TextStorageTest extends Assert {
+
+    private final static int countOfRandomOperations = 5000;
+    private final static int maxInsertLength = 50;
+    private final static int initLength = 1000;
+    private static final Random rand = new Random();
+
+    private static String randomString(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(rand.nextInt(10) == 0 ? '\n' : (char) ('a' + rand.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static void assertStorageEquals(StringBuilder expected, TextStorage storage) {
+        assertEquals(expected.length(), storage.length());
+        assertEquals(expected.toString(), storage.toString());
+    }
+
+    private static void randomOperations(TextStorage storage) {
+        StringBuilder expected = new StringBuilder(randomString(initLength));
+        storage.reset(CharBuffer.wrap(expected.toString().toCharArray()));
+
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            int pos = rand.nextInt(expected.length() + 1);
+            switch (rand.nextInt(5)) {
+                case 0:
+                case 1:
+                    String s = randomString(rand.nextInt(maxInsertLength));
+                    expected.insert(pos, s);
+                    storage.insert(pos, s);
+                    break;
+                case 2:
+                    int end = Math.min(expected.length(), pos + rand.nextInt(maxInsertLength));
+                    expected.delete(pos, end);
+                    storage.delete(pos, end);
+                    break;
+                case 3:
+                    if (pos < expected.length()) {
+                        assertEquals(expected.charAt(pos), storage.charAt(pos));
+                    }
+                    break;
+                case 4:
+                    int subEnd = pos + rand.nextInt(expected.length() - pos + 1);
+                    assertEquals(expected.substring(pos, subEnd), storage.substring(pos, subEnd));
+                    break;
+            }
+        }
+
+        assertStorageEquals(expected, storage);
+    }
+
+    private static void typing(TextStorage storage) {
+        StringBuilder expected = new StringBuilder(randomString(initLength));
+        storage.reset(expected.toString());
+
+        int pos = initLength / 2;
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            if (rand.nextInt(4) == 0 && pos > 0) {
+                expected.delete(pos - 1, pos);
+                storage.delete(pos - 1, pos);
+                pos--;
+            } else {
+                String ch = randomString(1);
+                expected.insert(pos, ch);
+                storage.insert(pos, ch);
+                pos++;
+            }
+        }
+
+        assertStorageEquals(expected, storage);
+    }
+
+    private static void snapshotNotChanging(TextStorage storage) {
+        storage.reset(randomString(initLength));
+        storage.insert(10, "abc");
+        String expected = storage.toString();
+
+        TextStorage snapshot = storage.snapshot();
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            storage.insert(rand.nextInt(storage.length() + 1), randomString(rand.nextInt(maxInsertLength)));
+            int pos = rand.nextInt(storage.length());
+            storage.delete(pos, Math.min(storage.length(), pos + rand.nextInt(maxInsertLength)));
+        }
+        assertEquals(expected, snapshot.toString());
+
+        snapshot.insert(0, "snapshot");
+        assertEquals("snapshot" + expected, snapshot.toString());
+    }
+
+    @Test
+    public void testPieceTableVoidText() {
+        TextStorage storage = new PieceTable();
+        assertEquals(0, storage.length());
+        assertEquals("", storage.toString());
+
+        storage.insert(0, "abc");
+        storage.delete(0, 3);
+        assertEquals("", storage.toString());
+    }
+
+    @Test
+    public void testPieceTableRandomOperations() {
+        randomOperations(new PieceTable());
+    }
+
+    @Test
+    public void testPieceTableTypingNotGrowingPieces() {
+        PieceTable storage = new PieceTable();
+        typing(storage);
+
+        storage.reset(randomString(initLength));
+        for (int i = 0; i < initLength; i++) {
+            storage.insert(initLength / 2 + i, "a");
+        }
+        assertEquals(3, storage.pieceCount());
+    }
+
+    @Test
+    public void testPieceTableGetChars() {
+        PieceTable storage = new PieceTable("0123456789");
+        storage.insert(5, "abc");
+        storage.delete(1, 2);
+
+        char[] res = new char[6];
+        storage.getChars(2, 8, res, 0);
+        assertArrayEquals("34abc5".toCharArray(), res);
+    }
+
+    @Test
+    public void testPieceTableSnapshotNotChanging() {
+        snapshotNotChanging(new PieceTable());
+    }
+
+    @Test
+    public void testRopeVoidText() {
+        TextStorage storage = new Rope();
+        assertEquals(0, storage.length());
+        assertEquals("", storage.toString());
+
+        storage.insert(0, "abc");
+        storage.delete(0, 3);
+        assertEquals("", storage.toString());
+    }
+
+    @Test
+    public void testRopeRandomOperations() {
+        randomOperations(new Rope());
+    }
+
+    @Test
+    public void testRopeTyping() {
+        typing(new Rope());
+    }
+
+    @Test
+    public void testRopeSnapshotNotChanging() {
+        snapshotNotChanging(new Rope());
+    }
+
+    @Test
+    public void testRopeBigTextIsBalanced() {
+        Rope storage = new Rope(randomString(initLength * initLength));
+        assertEquals(2, storage.height());
+
+        StringBuilder expected = new StringBuilder(storage.toString());
+        for (int i = 0; i < countOfRandomOperations; i++) {
+            int pos = rand.nextInt(expected.length() - maxInsertLength);
+            expected.delete(pos, pos + maxInsertLength);
+            storage.delete(pos, pos + maxInsertLength);
+        }
+        assertStorageEquals(expected, storage);
+        assertTrue(storage.height() <= 2);
+
+        storage.delete(1, storage.length() - 1);
+        assertEquals(0, storage.height());
+        assertEquals(2, storage.length());
+    }
+
+    @Test
+    public void testRopeAppendOfSequences() {
+        String text = randomString(initLength * 3);
+        char[] chars = ("xyz" + text).toCharArray();
+        CharSequence[] sequences = {text, new StringBuilder(text), CharBuffer.wrap(chars, 3, text.length()),
+                new Rope(text), new javax.swing.text.Segment(chars, 3, text.length())};
+        for (CharSequence sequence : sequences) {
+            Rope storage = new Rope("ab");
+            int from = rand.nextInt(text.length());
+            int to = from + rand.nextInt(text.length() - from + 1);
+            storage.append(sequence, from, to);
+            assertEquals("ab" + text.substring(from, to), storage.toString());
+
+            storage.reset(sequence);
+            assertEquals(text, storage.toString());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package Editor;
+
+import java.awt.*;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// Font, colors and rendering hints of the text area. They are read once from theme.properties:
+// the one near the classes, then the one in the working directory overrides it
+class Theme {
+
+    private static final String FILE_NAME = "theme.properties";
+
+    private final Font font;
+    private final Color background;
+    private final Color selection;
+    private final Color caret;
+    private final Color text; // color of text files
+    private final Color[] wordColors; // by ordinal of Word.Type
+    private final RenderingHints hints;
+    private final boolean isVolatileBuffer; // back buffer of the area in video memory
+
+    Theme(Properties properties) {
+        font = new Font(properties.getProperty("font.name", "MONOSPACED"), Font.PLAIN,
+                Integer.parseInt(properties.getProperty("font.size", "14")));
+        background = getColor(properties, "background", Color.WHITE);
+        selection = getColor(properties, "selection", Color.LIGHT_GRAY);
+        caret = getColor(properties, "caret", Color.BLACK);
+        text = getColor(properties, "text", Color.BLACK);
+
+        Word.Type[] types = Word.Type.values();
+        wordColors = new Color[types.length];
+        for (Word.Type type : types) {
+            wordColors[type.ordinal()] = getColor(properties, "word." + type.name(), getDefaultColor(type));
+        }
+
+        hints = new RenderingHints(null);
+        switch (properties.getProperty("antialiasing", "default")) {
+            case "on":
+                hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                break;
+            case "off":
+                hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+                break;
+            case "default":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown antialiasing " + properties.getProperty("antialiasing"));
+        }
+
+        switch (properties.getProperty("buffer", "image")) {
+            case "image":
+                isVolatileBuffer = false;
+                break;
+            case "volatile":
+                isVolatileBuffer = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown buffer " + properties.getProperty("buffer"));
+        }
+    }
+
+    public static Theme load() {
+        Properties properties = new Properties();
+        try {
+            try (InputStream in = Theme.class.getResourceAsStream(FILE_NAME)) {
+                if (in != null) {
+                    properties.load(in);
+                }
+            }
+
+            Path path = Paths.get(FILE_NAME);
+            if (Files.isRegularFile(path)) {
+                try (InputStream in = new FileInputStream(path.toFile())) {
+                    properties.load(in);
+                }
+            }
+            return new Theme(properties);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Problem with theme file");
+            return new Theme(new Properties());
+        }
+    }
+
+    private static Color getColor(Properties properties, String key, Color defaultColor) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultColor : Color.decode(value.trim());
+    }
+
+    private static Color getDefaultColor(Word.Type type) {
+        switch (type) {
+            case Key:
+                return Color.BLUE;
+            case Identifier:
+                return Color.GRAY;
+            case Comment:
+                return Color.MAGENTA;
+            case BracketLight:
+                return Color.RED;
+            default:
+                return Color.BLACK;
+        }
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public Color getBackground() {
+        return background;
+    }
+
+    public Color getSelection() {
+        return selection;
+    }
+
+    public Color getCaret() {
+        return caret;
+    }
+
+    public Color getText() {
+        return text;
+    }
+
+    public Color getColor(Word.Type type) {
+        return wordColors[type.ordinal()];
+    }
+
+    public RenderingHints getHints() {
+        return hints;
+    }
+
+    public boolean isVolatileBuffer() {
+        return isVolatileBuffer;
+    }
+}
@@ -0,0 +1,149 @@
+package Editor;
+
+import java.util.Arrays;
+
+// Immutable snapshot of the screen: text and words of every row, offsets, caret and selection of the document.
+// EDocument publishes a new one after every change, paint reads only the last published one, so it never
+// sees structures which are being changed. Rows which aren't changed are shared with the previous snapshot
+// and keep their version, so caches of drawn rows and metrics are keyed by versions of rows
+class Viewport {
+
+    static final Row EMPTY_ROW = new Row(0, new char[0], new int[0], new int[0], new Word.Type[0]);
+
+    private final int version;
+    private final int startRow; // rows [startRow, startRow + rows.length) are in the snapshot
+    private final Row[] rows;
+    private final int lineCount;
+    private final int heightOffset;
+    private final int widthOffset;
+    private final boolean isFileTypeText;
+    private final int caretRow;
+    private final int caretColumn;
+    private final int[] selection; // start column, start row, end column, end row or null
+
+    Viewport(int version, int startRow, Row[] rows, int lineCount, int heightOffset, int widthOffset,
+             boolean isFileTypeText, int caretRow, int caretColumn, int[] selection) {
+        this.version = version;
+        this.startRow = startRow;
+        this.rows = rows;
+        this.lineCount = lineCount;
+        this.heightOffset = heightOffset;
+        this.widthOffset = widthOffset;
+        this.isFileTypeText = isFileTypeText;
+        this.caretRow = caretRow;
+        this.caretColumn = caretColumn;
+        this.selection = selection == null ? null : selection.clone();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getStartRow() {
+        return startRow;
+    }
+
+    public int getEndRow() {
+        return startRow + rows.length;
+    }
+
+    public boolean contains(int row) {
+        return row >= startRow && row < startRow + rows.length;
+    }
+
+    // rows [getStartRow(), getEndRow()), not copied, they mustn't be changed
+    Row[] getRows() {
+        return rows;
+    }
+
+    // EMPTY_ROW for rows out of the snapshot
+    public Row getRow(int row) {
+        return contains(row) ? rows[row - startRow] : EMPTY_ROW;
+    }
+
+    // count of rows in the document
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getHeightOffset() {
+        return heightOffset;
+    }
+
+    public int getWidthOffset() {
+        return widthOffset;
+    }
+
+    public boolean isFileTypeText() {
+        return isFileTypeText;
+    }
+
+    public int getCaretRow() {
+        return caretRow;
+    }
+
+    public int getCaretColumn() {
+        return caretColumn;
+    }
+
+    public boolean isExistSelection() {
+        return selection != null;
+    }
+
+    // start column, start row, end column, end row, null if there is no selection
+    public int[] getSelectionInterval() {
+        return selection == null ? null : selection.clone();
+    }
+
+    public boolean isSameSelection(int[] selection) {
+        return Arrays.equals(this.selection, selection);
+    }
+
+    // Text and words of a row, words are empty for text files
+    static class Row {
+
+        private final int version;
+        private final char[] chars;
+        private final int[] starts;
+        private final int[] ends;
+        private final Word.Type[] types;
+
+        Row(int version, char[] chars, int[] starts, int[] ends, Word.Type[] types) {
+            this.version = version;
+            this.chars = chars;
+            this.starts = starts;
+            this.ends = ends;
+            this.types = types;
+        }
+
+        // unique for every built row, 0 for EMPTY_ROW
+        public int getVersion() {
+            return version;
+        }
+
+        public int length() {
+            return chars.length;
+        }
+
+        // chars of the row, not copied, they mustn't be changed
+        public char[] getChars() {
+            return chars;
+        }
+
+        public int wordCount() {
+            return starts.length;
+        }
+
+        public int startAt(int wordN) {
+            return starts[wordN];
+        }
+
+        public int endAt(int wordN) {
+            return ends[wordN];
+        }
+
+        public Word.Type typeAt(int wordN) {
+            return types[wordN];
+        }
+    }
+}
@@ -3,47 +3,40 @@ package Editor;
 import gnu.trove.list.array.TByteArrayList;
 import gnu.trove.list.array.TIntArrayList;
 
-import java.util.ArrayList;
-
+// Words of every row are stored one after another in data, length keeps count of words in every row
 class Words {
     private final WordsArrayList data;
+    private final BracketIndex brackets;
     private final TByteArrayList commentContinuousList;
-    private final TIntArrayList length;
-
-    private int row;
-    private int pos;
+    private final LineIndex length;
 
     Words() {
         data = new WordsArrayList();
-        length = new TIntArrayList();
+        length = new LineIndex(0);
+        brackets = new BracketIndex();
         commentContinuousList = new TByteArrayList();
         length.add(0);
+        brackets.insert(0, 1);
         commentContinuousList.add((byte) 0);
         commentContinuousList.add((byte) 0);
-        row = 0;
-        pos = 0;
-    }
-
-    private void popLast(int row, Word word) {
-        int pos = find(row, 0);
-        data.add(pos + length.get(row), word);
-        length.set(row, length.get(row) + 1);
     }
 
     public void add(int row) {
-        find(row - 1, 0);
         length.insert(row, 0);
+        brackets.insert(row, 1);
         commentContinuousList.insert(row, (byte) 0);
     }
 
     public void addVoidLines(int row, int len) {
-        find(row - 1, 0);
         length.insert(row, new int[len]);
+        brackets.insert(row, len);
         commentContinuousList.insert(row, new byte[len]);
     }
 
-    public void setAll(int startRow, ArrayList<Word> list, TIntArrayList resLength) {
-        data.add(find(startRow, 0), list);
+    // rowBrackets are summaries of brackets of rows, see BracketIndex.addRow
+    public void setAll(int startRow, WordsArrayList list, TIntArrayList resLength, TIntArrayList rowBrackets) {
+        data.add(find(startRow, 0), list, 0, list.size());
+        brackets.set(startRow, rowBrackets);
 
         for (int i = 0; i < resLength.size(); i++) {
             length.set(startRow + i, resLength.get(i));
@@ -59,27 +52,16 @@ class Words {
         }
 
         data.remove(startPos, endPos);
-    }
-
-    public void set(int row, int wordN, Word word) {
-        int pos = find(row, 0);
-        if (length.get(row) > wordN) {
-            data.set(pos + wordN, word);
-        } else if (length.get(row) == wordN) {
-            popLast(row, word);
-        } else {
-            throw new IllegalArgumentException();
-        }
+        brackets.clear(startRow, endRow + 1 - startRow);
     }
 
     public void remove(int row, int endRow) { // [.,.]
         int pos = find(row, 0);
         int endPos = endRow >= length.size() ? data.size() : find(endRow, length.get(endRow));
 
-        find(row, 0);
-
         data.remove(pos, endPos);
         length.remove(row, endRow + 1 - row);
+        brackets.remove(row, endRow + 1 - row);
         commentContinuousList.remove(row, endRow + 1 - row);
     }
 
@@ -87,32 +69,46 @@ class Words {
         return data.get(find(row, wordN));
     }
 
-    private int find(int row, int wordN) {
-        if (this.row == row) {
-            return pos + wordN;
-        } else {
-            if (this.row < row) {
-                for (int i = this.row; i < row; i++) {
-                    pos += length.get(i);
-                }
-            } else {
-                if (this.row >> 1 < row) {
-                    for (int i = row; i < this.row; i++) {
-                        pos -= length.get(i);
-                    }
-                } else {
-                    pos = 0;
-                    for (int i = 0; i < row; i++) {
-                        pos += length.get(i);
-                    }
-                }
-            }
-
-            this.row = row;
-            return pos + wordN;
+    // Access to a word without creating Word
+
+    public int startAt(int row, int wordN) {
+        return data.getStart(find(row, wordN));
+    }
+
+    public int endAt(int row, int wordN) {
+        return data.getEnd(find(row, wordN));
+    }
+
+    public Word.Type typeAt(int row, int wordN) {
+        return data.getType(find(row, wordN));
+    }
+
+    // words of row are copied to starts, ends and types, which have rowSize(row) elements
+    public void copyRow(int row, int[] starts, int[] ends, Word.Type[] types) {
+        int pos = find(row, 0);
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = data.getStart(pos + i);
+            ends[i] = data.getEnd(pos + i);
+            types[i] = data.getType(pos + i);
         }
     }
 
+    public void setType(int row, int wordN, Word.Type type) {
+        if (wordN < 0 || wordN >= length.get(row)) {
+            throw new IllegalArgumentException("No word " + wordN + " in row " + row);
+        }
+        data.setType(find(row, wordN), type);
+    }
+
+    // position of word in data, O(log n) for any row
+    private int find(int row, int wordN) {
+        return length.getLineStart(row) + wordN;
+    }
+
+    public BracketIndex getBrackets() {
+        return brackets;
+    }
+
     public int size() {
         return length.size();
     }
@@ -124,19 +120,17 @@ class Words {
     public void clear() {
         data.clear();
         length.clear();
+        brackets.clear();
         commentContinuousList.clear();
         length.add(0);
+        brackets.insert(0, 1);
         commentContinuousList.add((byte) 0);
         commentContinuousList.add((byte) 0);
-        pos = 0;
-        row = 0;
     }
 
     public void updateSize(int size) {
         if (length.size() < size) {
-            for (int i = length.size(); i < size; i++) {
-                add(length.size());
-            }
+            addVoidLines(length.size(), size - length.size());
         }
 
         if (length.size() > size) {
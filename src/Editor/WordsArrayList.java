@@ -1,107 +1,331 @@
 package Editor;
 
 import Editor.Word.Type;
-import gnu.trove.list.array.TByteArrayList;
-import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
+// Words split into blocks of at most MAX_BLOCK words, every block has own arrays,
+// so insert and remove move only words of one block instead of all words after the change.
+// Fenwick tree over blocks keeps count of words before every block.
+// clear() keeps blocks and the tree for the next words, so a reused list doesn't allocate them again
 class WordsArrayList {
-    private final TIntArrayList start;
-    private final TIntArrayList end;
-    private final TByteArrayList type;
+
+    private static final int MAX_BLOCK = 1024;
+    private static final int MIN_BLOCK = MAX_BLOCK / 8;
+    private static final int FILL_BLOCK = MAX_BLOCK * 3 / 4; // new blocks have space for insertions
+    private static final Type[] types = Type.values();
+
+    private final ArrayList<Block> blocks;
+    private final ArrayList<Block> freeBlocks; // empty blocks left by clear()
+    private int[] tree; // can be longer than blocks.size() + 1
+    private int size;
+
+    // last found block
+    private int lastBlock;
+    private int lastBlockStart;
 
     WordsArrayList() {
-        start = new TIntArrayList();
-        end = new TIntArrayList();
-        type = new TByteArrayList();
+        blocks = new ArrayList<>();
+        freeBlocks = new ArrayList<>();
+        tree = new int[1];
+        size = 0;
+        lastBlock = -1;
     }
 
     public int size() {
-        return start.size();
+        return size;
     }
 
-    public void add(int pos, Word word) {
-        start.insert(pos, word.start);
-        end.insert(pos, word.end);
-        type.insert(pos, typeToByte(word.type));
+    // add word to the end
+    public void add(int wordStart, int wordEnd, Type wordType) {
+        if (blocks.isEmpty() || blocks.get(blocks.size() - 1).size == MAX_BLOCK) {
+            blocks.add(newBlock());
+            rebuild();
+        }
+
+        int block = blocks.size() - 1;
+        blocks.get(block).add(wordStart, wordEnd, (byte) wordType.ordinal());
+        size++;
+        update(block, 1);
     }
 
-    public void add(int pos, ArrayList<Word> list) {
-        int[] startIns = new int[list.size()];
-        int[] endIns = new int[list.size()];
-        byte[] typeIns = new byte[list.size()];
-        for (int i = 0; i < list.size(); i++) {
-            Word word = list.get(i);
-            startIns[i] = word.start;
-            endIns[i] = word.end;
-            typeIns[i] = typeToByte(word.type);
+    // insert words [from, to) of list
+    public void add(int pos, WordsArrayList list, int from, int to) {
+        if (pos < 0 || pos > size) {
+            throw new IndexOutOfBoundsException("Position: " + pos + ", size: " + size);
+        }
+        int count = to - from;
+        if (count == 0) {
+            return;
         }
 
-        start.insert(pos, startIns);
-        end.insert(pos, endIns);
-        type.insert(pos, typeIns);
-    }
+        if (pos == size) {
+            list.copy(from, to, this);
+            rebuild();
+            return;
+        }
+
+        int block = findBlock(pos);
+        int inBlock = pos - lastBlockStart;
+        Block words = blocks.get(block);
+        if (words.size + count <= MAX_BLOCK) {
+            int tail = words.size - inBlock;
+            System.arraycopy(words.start, inBlock, words.start, inBlock + count, tail);
+            System.arraycopy(words.end, inBlock, words.end, inBlock + count, tail);
+            System.arraycopy(words.type, inBlock, words.type, inBlock + count, tail);
+            words.size = inBlock;
+            list.copy(from, to, words);
+            words.size += tail;
+            size += count;
+            update(block, count);
+            return;
+        }
+
+        // block is rebuilt as its head + list + its tail
+        WordsArrayList res = new WordsArrayList();
+        copyBlock(words, 0, inBlock, res);
+        list.copy(from, to, res);
+        copyBlock(words, inBlock, words.size, res);
 
-    public void set(int pos, Word word) {
-        start.set(pos, word.start);
-        end.set(pos, word.end);
-        type.set(pos, typeToByte(word.type));
+        blocks.remove(block);
+        blocks.addAll(block, res.blocks);
+        size += count;
+        rebuild();
     }
 
     public Word get(int pos) {
-        return new Word(start.get(pos), end.get(pos), byteToType(type.get(pos)));
+        Block words = blocks.get(findChecked(pos));
+        int i = pos - lastBlockStart;
+        return new Word(words.start[i], words.end[i], types[words.type[i]]);
+    }
+
+    public int getStart(int pos) {
+        return blocks.get(findChecked(pos)).start[pos - lastBlockStart];
+    }
+
+    public int getEnd(int pos) {
+        return blocks.get(findChecked(pos)).end[pos - lastBlockStart];
+    }
+
+    public Type getType(int pos) {
+        return types[blocks.get(findChecked(pos)).type[pos - lastBlockStart]];
+    }
+
+    public void setType(int pos, Type wordType) {
+        blocks.get(findChecked(pos)).type[pos - lastBlockStart] = (byte) wordType.ordinal();
     }
 
     public void remove(int startPos, int endPos) {  // delete interval [ )
-        int length = endPos - startPos;
+        if (startPos < 0 || startPos > endPos || endPos > size) {
+            throw new IndexOutOfBoundsException("Interval: [" + startPos + ", " + endPos + "), size: " + size);
+        }
+        int count = endPos - startPos;
+        if (count == 0) {
+            return;
+        }
 
-        start.remove(startPos, length);
-        end.remove(startPos, length);
-        type.remove(startPos, length);
+        int block = findBlock(startPos);
+        int inBlock = startPos - lastBlockStart;
+        size -= count;
+
+        Block words = blocks.get(block);
+        if (inBlock + count < words.size) {
+            words.remove(inBlock, count);
+            if (words.size < MIN_BLOCK && (mergeBlocks(block) || block > 0 && mergeBlocks(block - 1))) {
+                rebuild();
+            } else {
+                update(block, -count);
+            }
+            return;
+        }
+
+        while (count > 0) {
+            words = blocks.get(block);
+            int n = Math.min(count, words.size - inBlock);
+            words.remove(inBlock, n);
+            count -= n;
+            if (words.size == 0) {
+                blocks.remove(block);
+            } else {
+                block++;
+            }
+            inBlock = 0;
+        }
+
+        if (block > 0) {
+            mergeBlocks(block - 1);
+        }
+        rebuild();
     }
 
     public void clear() {
-        start.clear();
-        end.clear();
-        type.clear();
-    }
-
-    private Word.Type byteToType(byte type) {
-        switch (type) {
-            case 1:
-                return Type.Key;
-            case 2:
-                return Type.Identifier;
-            case 3:
-                return Type.Comment;
-            case 4:
-                return Type.Bracket;
-            case 5:
-                return Type.Other;
-            case 6:
-                return Type.BracketLight;
-            default:
-                throw new IllegalArgumentException();
-        }
-    }
-
-    private byte typeToByte(Type type) {
-        switch (type) {
-            case Key:
-                return 1;
-            case Identifier:
-                return 2;
-            case Comment:
-                return 3;
-            case Bracket:
-                return 4;
-            case Other:
-                return 5;
-            case BracketLight:
-                return 6;
-            default:
-                throw new IllegalArgumentException();
+        for (Block words : blocks) {
+            words.size = 0;
+        }
+        freeBlocks.addAll(blocks);
+        blocks.clear();
+        size = 0;
+        rebuild();
+    }
+
+    // add words [from, to) to the end of dst, Fenwick tree of dst isn't updated
+    private void copy(int from, int to, WordsArrayList dst) {
+        if (from == to) {
+            return;
+        }
+
+        int block = findBlock(from);
+        int inBlock = from - lastBlockStart;
+        while (from < to) {
+            Block words = blocks.get(block);
+            int n = Math.min(to - from, words.size - inBlock);
+            copyBlock(words, inBlock, inBlock + n, dst);
+            from += n;
+            block++;
+            inBlock = 0;
+        }
+    }
+
+    // add words [from, to) to the end of dst block, there must be space for them
+    private void copy(int from, int to, Block dst) {
+        if (from == to) {
+            return;
+        }
+
+        int block = findBlock(from);
+        int inBlock = from - lastBlockStart;
+        while (from < to) {
+            Block words = blocks.get(block);
+            int n = Math.min(to - from, words.size - inBlock);
+            System.arraycopy(words.start, inBlock, dst.start, dst.size, n);
+            System.arraycopy(words.end, inBlock, dst.end, dst.size, n);
+            System.arraycopy(words.type, inBlock, dst.type, dst.size, n);
+            dst.size += n;
+            from += n;
+            block++;
+            inBlock = 0;
+        }
+    }
+
+    // add words [from, to) of block to the end of dst, new blocks of dst are filled up to FILL_BLOCK,
+    // Fenwick tree of dst isn't updated
+    private static void copyBlock(Block words, int from, int to, WordsArrayList dst) {
+        while (from < to) {
+            Block last = dst.blocks.isEmpty() ? null : dst.blocks.get(dst.blocks.size() - 1);
+            if (last == null || last.size >= FILL_BLOCK) {
+                last = dst.newBlock();
+                dst.blocks.add(last);
+            }
+
+            int n = Math.min(to - from, FILL_BLOCK - last.size);
+            System.arraycopy(words.start, from, last.start, last.size, n);
+            System.arraycopy(words.end, from, last.end, last.size, n);
+            System.arraycopy(words.type, from, last.type, last.size, n);
+            last.size += n;
+            dst.size += n;
+            from += n;
+        }
+    }
+
+    private int findChecked(int pos) {
+        if (pos < 0 || pos >= size) {
+            throw new IndexOutOfBoundsException("Position: " + pos + ", size: " + size);
+        }
+        return findBlock(pos);
+    }
+
+    // block containing pos < size
+    private int findBlock(int pos) {
+        if (lastBlock >= 0 && pos >= lastBlockStart && pos < lastBlockStart + blocks.get(lastBlock).size) {
+            return lastBlock;
+        }
+
+        int block = 0;
+        int start = 0;
+        for (int step = Integer.highestOneBit(blocks.size()); step > 0; step >>= 1) {
+            if (block + step <= blocks.size() && start + tree[block + step] <= pos) {
+                block += step;
+                start += tree[block];
+            }
+        }
+
+        lastBlock = block;
+        lastBlockStart = start;
+        return block;
+    }
+
+    private Block newBlock() {
+        return freeBlocks.isEmpty() ? new Block() : freeBlocks.remove(freeBlocks.size() - 1);
+    }
+
+    // merge block with the next one if it is possible
+    private boolean mergeBlocks(int block) {
+        if (block + 1 >= blocks.size() || blocks.get(block).size + blocks.get(block + 1).size > MAX_BLOCK) {
+            return false;
+        }
+
+        Block words = blocks.get(block);
+        Block next = blocks.get(block + 1);
+        System.arraycopy(next.start, 0, words.start, words.size, next.size);
+        System.arraycopy(next.end, 0, words.end, words.size, next.size);
+        System.arraycopy(next.type, 0, words.type, words.size, next.size);
+        words.size += next.size;
+        blocks.remove(block + 1);
+        return true;
+    }
+
+    // Fenwick tree, block i is stored at index i + 1
+
+    private void rebuild() {
+        int n = blocks.size();
+        if (tree.length < n + 1) {
+            tree = new int[Math.max(n + 1, tree.length * 2)];
+        } else {
+            Arrays.fill(tree, 0, n + 1, 0);
+        }
+        for (int i = 1; i <= n; i++) {
+            tree[i] += blocks.get(i - 1).size;
+            int parent = i + (i & -i);
+            if (parent <= n) {
+                tree[parent] += tree[i];
+            }
+        }
+        lastBlock = -1;
+    }
+
+    private void update(int block, int diff) {
+        for (int i = block + 1; i <= blocks.size(); i += i & -i) {
+            tree[i] += diff;
+        }
+        lastBlock = -1;
+    }
+
+    private static class Block {
+        final int[] start;
+        final int[] end;
+        final byte[] type;
+        int size;
+
+        Block() {
+            start = new int[MAX_BLOCK];
+            end = new int[MAX_BLOCK];
+            type = new byte[MAX_BLOCK];
+            size = 0;
+        }
+
+        void add(int wordStart, int wordEnd, byte wordType) {
+            start[size] = wordStart;
+            end[size] = wordEnd;
+            type[size] = wordType;
+            size++;
+        }
+
+        void remove(int from, int count) {
+            System.arraycopy(start, from + count, start, from, size - from - count);
+            System.arraycopy(end, from + count, end, from, size - from - count);
+            System.arraycopy(type, from + count, type, from, size - from - count);
+            size -= count;
         }
     }
 }
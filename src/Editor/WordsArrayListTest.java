@@ -0,0 +1,94 @@
+package Editor;
+
+import Editor.Word.Type;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+public class WordsArrayListTest extends Assert {
+
+    private static final Type[] types = {Type.Key, Type.Identifier, Type.Comment, Type.Bracket, Type.Other};
+    private Random rand;
+
+    @Before
+    public void init() {
+        rand = new Random();
+    }
+
+    @Test
+    public void testRandomOperations() {
+        for (int test = 0; test < 20; test++) {
+            WordsArrayList words = new WordsArrayList();
+            ArrayList<Word> expected = new ArrayList<>();
+            int maxCount = rand.nextBoolean() ? 10 : 3000;
+
+            for (int operation = 0; operation < 300; operation++) {
+                switch (rand.nextInt(5)) {
+                    case 0:
+                        for (int i = rand.nextInt(maxCount); i > 0; i--) {
+                            Word word = randomWord();
+                            words.add(word.start, word.end, word.type);
+                            expected.add(word);
+                        }
+                        break;
+                    case 1:
+                        WordsArrayList list = new WordsArrayList();
+                        ArrayList<Word> listWords = new ArrayList<>();
+                        for (int i = rand.nextInt(maxCount); i > 0; i--) {
+                            Word word = randomWord();
+                            list.add(word.start, word.end, word.type);
+                            listWords.add(word);
+                        }
+                        int from = rand.nextInt(listWords.size() + 1);
+                        int to = from + rand.nextInt(listWords.size() - from + 1);
+                        int pos = rand.nextInt(expected.size() + 1);
+                        words.add(pos, list, from, to);
+                        expected.addAll(pos, listWords.subList(from, to));
+                        break;
+                    case 2:
+                        int start = rand.nextInt(expected.size() + 1);
+                        int end = start + rand.nextInt(Math.min(expected.size() - start, maxCount) + 1);
+                        words.remove(start, end);
+                        expected.subList(start, end).clear();
+                        break;
+                    case 3:
+                        if (!expected.isEmpty()) {
+                            int n = rand.nextInt(expected.size());
+                            Type type = types[rand.nextInt(types.length)];
+                            words.setType(n, type);
+                            expected.get(n).type = type;
+                        }
+                        break;
+                    default:
+                        if (rand.nextInt(20) == 0) {
+                            words.clear();
+                            expected.clear();
+                        }
+                }
+
+                assertEquals(expected.size(), words.size());
+                for (int i = 0; i < 10 && !expected.isEmpty(); i++) {
+                    int n = rand.nextInt(expected.size());
+                    assertEquals(expected.get(n).start, words.getStart(n));
+                    assertEquals(expected.get(n).end, words.getEnd(n));
+                    assertEquals(expected.get(n).type, words.getType(n));
+                }
+            }
+
+            for (int i = 0; i < expected.size(); i++) {
+                Word word = words.get(i);
+                assertEquals(expected.get(i).start, word.start);
+                assertEquals(expected.get(i).end, word.end);
+                assertEquals(expected.get(i).type, word.type);
+            }
+        }
+    }
+
+    private Word randomWord() {
+        int start = rand.nextInt(1000);
+        return new Word(start, start + rand.nextInt(10) + 1, types[rand.nextInt(types.length)]);
+    }
+}